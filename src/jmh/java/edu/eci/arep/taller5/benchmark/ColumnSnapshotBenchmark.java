@@ -0,0 +1,102 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.config.CacheConfig;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import edu.eci.arep.taller5.service.PropertyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counted listings answered by the column snapshot against the same listings queried on H2
+ * (compare both with -p rows=1000000, each listing is a page of 20 plus its total). The database path
+ * keeps its counts cached between writes, the AfterWrite case measures it once they were evicted
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnSnapshotBenchmark {
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    @Param({"false", "true"})
+    private boolean snapshot;
+
+    private ConfigurableApplicationContext context;
+    private PropertyService propertyService;
+    private Cache counts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Taller5Application.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:jmh-snapshot-" + rows + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "--app.snapshot.enabled=" + snapshot,
+                "--logging.level.root=WARN");
+        propertyService = context.getBean(PropertyService.class);
+        counts = context.getBean(CacheManager.class).getCache(CacheConfig.PROPERTY_COUNTS);
+        PropertyServiceBenchmark.seed(context.getBean(PropertyBatchService.class), rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Property> priceAndSizeByPrice() {
+        return propertyService.getPaginatedProperties(PropertyFilter.of(null, 500_000.0, 200.0),
+                PageRequest.of(0, 20, Sort.by("price")));
+    }
+
+    /**
+     * The same listing right after a write, every write evicts the cached counts of the database path
+     */
+    @Benchmark
+    public Page<Property> priceAndSizeByPriceAfterWrite() {
+        counts.clear();
+        return priceAndSizeByPrice();
+    }
+
+    @Benchmark
+    public Page<Property> pricePerM2Range() {
+        return propertyService.getPaginatedProperties(new PropertyFilter(null, null, null, null, null, 2_000.0, 4_000.0),
+                PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Property> locationBySize() {
+        return propertyService.getPaginatedProperties(PropertyFilter.of("bogota", null, 100.0),
+                PageRequest.of(0, 20, Sort.by(Sort.Order.desc("size"))));
+    }
+
+    @Benchmark
+    public Page<Property> deepPage() {
+        return propertyService.getPaginatedProperties(PropertyFilter.NONE, PageRequest.of(rows / 20 - 1, 20));
+    }
+}
@@ -0,0 +1,98 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The catch-all "(:x IS NULL OR ...)" JPQL that the listing used before against the Specification
+ * query that only emits the given predicates, same filters, page and sort in both.
+ * The count cache is bypassed so both sides run the row query only
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterQueryBenchmark {
+    private static final String CATCH_ALL = """
+            SELECT p FROM Property p
+            WHERE (:location IS NULL OR p.addressLower LIKE LOWER(CONCAT('%',:location,'%')))
+            AND (:price IS NULL OR p.price >= :price)
+            AND (:sizeProperty IS NULL OR p.size >= :sizeProperty)
+            ORDER BY p.price, p.id
+            """;
+
+    @Param({"100000"})
+    private int rows;
+
+    /**
+     * none: no filter, price: min price, size: min size, both: min price and min size
+     */
+    @Param({"none", "price", "size", "both"})
+    private String filter;
+
+    private ConfigurableApplicationContext context;
+    private EntityManager entityManager;
+    private PropertyRepository propertyRepository;
+    private Double price;
+    private Double sizeProperty;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Taller5Application.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:jmh-filter-" + rows + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "--logging.level.root=WARN");
+        entityManager = context.getBean(EntityManager.class);
+        propertyRepository = context.getBean(PropertyRepository.class);
+        PropertyServiceBenchmark.seed(context.getBean(PropertyBatchService.class), rows);
+        price = filter.equals("price") || filter.equals("both") ? 990_000.0 : null;
+        sizeProperty = filter.equals("size") || filter.equals("both") ? 318.0 : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Property> catchAllJpql() {
+        return entityManager.createQuery(CATCH_ALL, Property.class)
+                .setParameter("location", null)
+                .setParameter("price", price)
+                .setParameter("sizeProperty", sizeProperty)
+                .setMaxResults(21)
+                .getResultList();
+    }
+
+    @Benchmark
+    public List<Property> specification() {
+        return propertyRepository.findSliceByFilter(PropertyFilter.of(null, price, sizeProperty), null,
+                PageRequest.of(0, 20, Sort.by("price", "id"))).getContent();
+    }
+}
@@ -0,0 +1,59 @@
+package edu.eci.arep.taller5.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.eci.arep.taller5.model.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the Page&lt;Property&gt; returned by getPaginatedProperties
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageSerializationBenchmark {
+    @Param({"20", "100"})
+    private int pageSize;
+
+    @Param({"100", "2000"})
+    private int descriptionLength;
+
+    private ObjectMapper objectMapper;
+    private Page<Property> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        List<Property> content = new ArrayList<>();
+        String description = "x".repeat(descriptionLength);
+        for (int i = 0; i < pageSize; i++) {
+            content.add(new Property((long) i, "Calle " + i + " #12-30 Bogota", 1000.0 * i, 50.0 + i, description));
+        }
+        page = new PageImpl<>(content, PageRequest.of(3, pageSize), 100_000);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
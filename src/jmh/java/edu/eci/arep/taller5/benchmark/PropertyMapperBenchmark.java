@@ -0,0 +1,56 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.mapper.PropertyMapper;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PropertyMapper.toProperty for new (no id) and existing (with id) properties
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyMapperBenchmark {
+    private PropertyDTO newProperty;
+    private PropertyDTO existingProperty;
+
+    @Setup
+    public void setUp() {
+        newProperty = new PropertyDTO();
+        newProperty.setAddress("Calle 80 #12-30 Bogota");
+        newProperty.setPrice(350000.0);
+        newProperty.setSize(120.0);
+        newProperty.setDescription("Family home");
+        existingProperty = new PropertyDTO();
+        existingProperty.setId(42L);
+        existingProperty.setAddress("Calle 80 #12-30 Bogota");
+        existingProperty.setPrice(350000.0);
+        existingProperty.setSize(120.0);
+        existingProperty.setDescription("Family home");
+    }
+
+    @Benchmark
+    public Property toNewProperty() {
+        return PropertyMapper.toProperty(newProperty);
+    }
+
+    @Benchmark
+    public Property toExistingProperty() {
+        return PropertyMapper.toProperty(existingProperty);
+    }
+}
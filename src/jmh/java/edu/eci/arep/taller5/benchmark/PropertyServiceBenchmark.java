@@ -0,0 +1,120 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.model.DTO.CursorPageDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import edu.eci.arep.taller5.service.PropertyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PropertyService filtering, paging and write paths against an embedded H2 seeded with
+ * the given number of rows (select sizes with -p rows=10000)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyServiceBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private PropertyService propertyService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Taller5Application.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:jmh-" + rows + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "--logging.level.root=WARN");
+        propertyService = context.getBean(PropertyService.class);
+        seed(context.getBean(PropertyBatchService.class), rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Property> firstPage() {
+        return propertyService.getPaginatedProperties(PropertyFilter.NONE, PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Property> deepPage() {
+        return propertyService.getPaginatedProperties(PropertyFilter.NONE, PageRequest.of(rows / 20 - 1, 20));
+    }
+
+    @Benchmark
+    public Slice<Property> filteredSliceByPriceAndSize() {
+        return propertyService.getSlicedProperties(PropertyFilter.of(null, 500_000.0, 200.0), PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Property> filteredByLocation() {
+        return propertyService.getPaginatedProperties(PropertyFilter.of("#42-", null, null), PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public CursorPageDTO<Property> cursorPageByPrice() {
+        return propertyService.getPropertiesAfter(PropertyFilter.NONE, "price", null, 20);
+    }
+
+    @Benchmark
+    public Property getById() {
+        return propertyService.getById(1L + ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public Property createUpdateAndDelete() {
+        Property created = propertyService.save(new Property("Benchmark write", 1000.0, 50.0, "write path"));
+        Property updated = propertyService.update(created.getId(),
+                new Property("Benchmark write updated", 2000.0, 60.0, "write path"), null);
+        propertyService.delete(created.getId(), null);
+        return updated;
+    }
+
+    static void seed(PropertyBatchService batchService, int rows) {
+        List<PropertyDTO> chunk = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            PropertyDTO dto = new PropertyDTO();
+            dto.setAddress("Calle " + i + " #" + (i % 100) + "-" + (i % 37) + " Bogota");
+            dto.setPrice(1000.0 + (i * 7919L) % 1_000_000);
+            dto.setSize(20.0 + i % 300);
+            dto.setDescription("Benchmark property " + i);
+            chunk.add(dto);
+            if (chunk.size() == 10_000 || i == rows - 1) {
+                batchService.createAll(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The update and delete paths with a read before the write (findById + save, existsById + deleteById,
+ * three statements and two transactions each) against the single UPDATE/DELETE whose row count tells
+ * whether the property existed. Runs with 8 threads so the extra round-trips compete for the pool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class WritePathBenchmark {
+    @Param({"10000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private PropertyRepository propertyRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Taller5Application.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:jmh-write-" + rows + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "--logging.level.root=WARN");
+        propertyRepository = context.getBean(PropertyRepository.class);
+        PropertyServiceBenchmark.seed(context.getBean(PropertyBatchService.class), rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * A concurrent update of the same row between the read and the write fails the version check,
+     * the controller answered it with 409 so it counts as a served request
+     */
+    @Benchmark
+    public Property readThenUpdate() {
+        Long id = randomId();
+        Property existing = propertyRepository.findById(id).orElseThrow();
+        existing.setPrice(1000.0 + ThreadLocalRandom.current().nextInt(1_000_000));
+        try {
+            return propertyRepository.save(existing);
+        } catch (OptimisticLockingFailureException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public int singleStatementUpdate() {
+        Long id = randomId();
+        Property values = new Property(id, "Calle " + id + " Bogota", 1000.0 + ThreadLocalRandom.current().nextInt(1_000_000), 50.0, null);
+        values.touch();
+        return propertyRepository.updateById(id, values, null);
+    }
+
+    @Benchmark
+    public boolean readThenDelete() {
+        Long id = propertyRepository.save(new Property("Benchmark delete", 1000.0, 50.0, null)).getId();
+        boolean exists = propertyRepository.existsById(id);
+        propertyRepository.deleteById(id);
+        return exists;
+    }
+
+    @Benchmark
+    public int singleStatementDelete() {
+        Long id = propertyRepository.save(new Property("Benchmark delete", 1000.0, 50.0, null)).getId();
+        return propertyRepository.deleteByIdAndVersion(id, null);
+    }
+
+    private Long randomId() {
+        return 1L + ThreadLocalRandom.current().nextInt(rows);
+    }
+}
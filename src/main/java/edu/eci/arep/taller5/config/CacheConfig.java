@@ -0,0 +1,72 @@
+package edu.eci.arep.taller5.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.eci.arep.taller5.web.ListingResponseCacheFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * In-process caches, each one with its own size and TTL limits
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String PROPERTIES = "properties";
+    public static final String PROPERTY_COUNTS = "propertyCounts";
+    public static final String LISTING_RESPONSES = "listingResponses";
+    /**
+     * Key of the count caches: the PropertyFilter of the first parameter
+     */
+    public static final String FILTER_KEY = "#p0";
+    /**
+     * Condition of the cached reads: a read that may miss a recent write (ReplicaRoutingDataSource) is not kept
+     */
+    public static final String UNLESS_MISSING_WRITES =
+            "T(edu.eci.arep.taller5.config.ReplicaRoutingDataSource).readsMayMissWrites()";
+
+    /**
+     * Properties by id, bounded with Caffeine's W-TinyLFU eviction so the hot listings stay in memory.
+     * Stats are recorded to publish the hit, miss and eviction counters
+     */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> propertiesCache(
+            @Value("${app.cache.properties.max-size:10000}") long maxSize,
+            @Value("${app.cache.properties.ttl:10m}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(PROPERTIES,
+                Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().build());
+    }
+
+    /**
+     * Total elements of the filtered listings, short-lived since every write evicts all of them
+     */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> propertyCountsCache(
+            @Value("${app.cache.property-counts.max-size:1000}") long maxSize,
+            @Value("${app.cache.property-counts.ttl:30s}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(PROPERTY_COUNTS,
+                Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().build());
+    }
+
+    /**
+     * Serialized listing responses, bounded by the bytes they hold instead of the number of entries
+     */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> listingResponsesCache(
+            @Value("${app.cache.listing-responses.max-bytes:16MB}") DataSize maxBytes,
+            @Value("${app.cache.listing-responses.ttl:10m}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(LISTING_RESPONSES,
+                Caffeine.newBuilder()
+                        .maximumWeight(maxBytes.toBytes())
+                        .weigher((Object key, Object value) ->
+                                value instanceof ListingResponseCacheFilter.CachedListing listing ? listing.weight() : 1)
+                        .expireAfterWrite(ttl).recordStats().build());
+    }
+}
@@ -0,0 +1,59 @@
+package edu.eci.arep.taller5.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Meters added to the ones of Spring Boot (http.server.requests, spring.data.repository.invocations,
+ * hikaricp.connections.*, jvm.*), all of them are scraped from /actuator/prometheus.
+ * The percentiles and histograms of each timer are set in application.properties
+ */
+@Configuration
+public class MetricsConfig {
+    /**
+     * Timer of the service methods, tagged with class and method
+     */
+    public static final String SERVICE_TIMER = "property.service";
+
+    /**
+     * Records the classes and methods annotated with @Timed
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    /**
+     * Bytes allocated in the heap by all the threads since the JVM started, exact at any moment unlike
+     * jvm.gc.memory.allocated that only moves on each collection. The allocation rate is rate() of it
+     */
+    @Bean
+    public MeterBinder jvmAllocationMetrics() {
+        return registry -> {
+            if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()){
+                FunctionCounter.builder("jvm.memory.allocated", threads,
+                                com.sun.management.ThreadMXBean::getTotalThreadAllocatedBytes)
+                        .baseUnit(BaseUnits.BYTES)
+                        .description("Bytes allocated in the heap by all threads")
+                        .register(registry);
+            }
+        };
+    }
+
+    /**
+     * Static, post processors are created before the rest of the beans
+     */
+    @Bean
+    public static RepositoryRowsMetrics repositoryRowsMetrics(ObjectProvider<MeterRegistry> registry) {
+        return new RepositoryRowsMetrics(registry);
+    }
+}
@@ -0,0 +1,122 @@
+package edu.eci.arep.taller5.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replicas: the read-only transactions (@Transactional(readOnly = true) in the services and the
+ * reads of the repositories) go to app.datasource.replicas.urls, the rest to spring.datasource.
+ * Every pool is a Hikari pool with the spring.datasource.hikari settings and its own metrics (pool tag)
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+    private ReplicaRoutingDataSource routing;
+
+    /**
+     * Settings shared by all the pools, bound from spring.datasource.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariConfig hikariSettings() {
+        return new HikariConfig();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties,
+                                                             HikariConfig hikariSettings,
+                                                             @Value("${app.datasource.replicas.urls}") List<String> urls,
+                                                             @Value("${app.datasource.replicas.username:${spring.datasource.username:}}") String username,
+                                                             @Value("${app.datasource.replicas.password:${spring.datasource.password:}}") String password,
+                                                             @Value("${app.datasource.replicas.max-lag:5s}") Duration maxLag,
+                                                             MeterRegistry meterRegistry) {
+        MicrometerMetricsTrackerFactory metrics = new MicrometerMetricsTrackerFactory(meterRegistry);
+        HikariDataSource primary = pool(hikariSettings, ReplicaRoutingDataSource.PRIMARY, properties.determineUrl(),
+                properties.determineUsername(), properties.determinePassword(), metrics);
+        primary.setDriverClassName(properties.determineDriverClassName());
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            replicas.add(pool(hikariSettings, "replica-" + i, urls.get(i).trim(), username, password, metrics));
+        }
+        routing = new ReplicaRoutingDataSource(primary, replicas, maxLag, Clock.systemUTC(), meterRegistry);
+        return routing;
+    }
+
+    /**
+     * The DataSource of JPA, Flyway and the rest of the application. The lazy proxy takes the
+     * connection on the first statement, after the transaction set its read-only flag
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    /**
+     * With open-in-view the EntityManager of a request would keep its first connection for every
+     * transaction, it is released after each one so the next transaction is routed again
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+
+    /**
+     * The replicas are checked once the schema exists
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startReplicaChecks(ApplicationReadyEvent event) {
+        routing.start(event.getApplicationContext().getEnvironment()
+                .getProperty("app.datasource.replicas.check-interval", Duration.class, Duration.ofSeconds(1)));
+    }
+
+    /**
+     * The replicas do not change the status, without them the reads go to the primary
+     */
+    @Bean
+    public HealthIndicator replicasHealthIndicator(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return () -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            for (ReplicaRoutingDataSource.Replica replica : replicaRoutingDataSource.getReplicas()) {
+                details.put(replica.getName(), Map.of("healthy", replica.isHealthy(), "lagMillis", replica.getLagMillis()));
+            }
+            return Health.up().withDetails(details).build();
+        };
+    }
+
+    private static HikariDataSource pool(HikariConfig settings, String name, String url, String username,
+                                         String password, MicrometerMetricsTrackerFactory metrics) {
+        HikariDataSource pool = new HikariDataSource();
+        settings.copyStateTo(pool);
+        pool.setPoolName(name);
+        pool.setJdbcUrl(url);
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setMetricsTrackerFactory(metrics);
+        return pool;
+    }
+}
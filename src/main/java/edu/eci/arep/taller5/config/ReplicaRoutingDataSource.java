@@ -0,0 +1,316 @@
+package edu.eci.arep.taller5.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Sends the read-only transactions to the replicas (round robin) and everything else to the primary.
+ * Every check-interval the primary gets a heartbeat (replica_heartbeat, epoch millis of this instance)
+ * and each replica is read back: a replica that fails the query or whose heartbeat is older than
+ * max-lag stops receiving reads until it catches up, without healthy replicas the reads go to the primary.
+ * After a write the reads of the client that wrote go to the primary for max-lag plus the check interval,
+ * the time a healthy replica may still miss that write. The client is the one bound to the thread by
+ * ReadYourWritesFilter, its last write travels in a cookie. The other clients keep reading the replicas,
+ * but inside that window of a write of this instance their reads may miss it (readsMayMissWrites) and
+ * are neither cached nor validated: the caches and the catalog ETag were just evicted or bumped by it.
+ * Threads without a client (write queue, exports, startup builds) use the window of the last write of
+ * the instance.
+ * The routing key is read when the connection is taken, so it has to be wrapped in a
+ * LazyConnectionDataSourceProxy to see the read-only flag of the transaction
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    public static final String PRIMARY = "primary";
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final ThreadLocal<Client> CLIENT = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final Clock clock;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+    private final Counter afterWrite;
+    private volatile long primaryAfterWriteMillis;
+    private volatile long lastWriteMillis;
+    private ScheduledExecutorService checker;
+
+    /**
+     * State of a replica, written by the checker and read by the routing
+     */
+    public static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy;
+        private volatile long lagMillis = -1;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return the age of the heartbeat in the last check, -1 when the replica could not be read
+         */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    /**
+     * Client served by the current thread: the time of its last write and what to do with a new one
+     */
+    public static final class Client {
+        private final ReplicaRoutingDataSource routing;
+        private final LongConsumer onWrite;
+        private volatile long lastWriteMillis;
+        private volatile boolean readMissingWrites;
+
+        Client(ReplicaRoutingDataSource routing, long lastWriteMillis, LongConsumer onWrite) {
+            this.routing = routing;
+            this.lastWriteMillis = lastWriteMillis;
+            this.onWrite = onWrite;
+        }
+    }
+
+    /**
+     * @param replicas the replica pools, named replica-0, replica-1... in this order
+     * @param maxLag the replicas further behind stop receiving reads
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration maxLag,
+                                    Clock clock, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Replica("replica-" + i, replicas.get(i)))
+                .toList();
+        this.maxLagMillis = maxLag.toMillis();
+        this.primaryAfterWriteMillis = maxLagMillis;
+        this.clock = clock;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicas.forEach(replica -> targets.put(replica.name, replica.dataSource));
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+        this.fallbacks = Counter.builder("db.replica.fallback")
+                .description("Read-only transactions sent to the primary because no replica was available")
+                .register(meterRegistry);
+        this.afterWrite = Counter.builder("db.replica.after-write")
+                .description("Read-only transactions sent to the primary because their client wrote recently")
+                .register(meterRegistry);
+        for (Replica replica : this.replicas) {
+            Gauge.builder("db.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .description("1 while the replica receives reads")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.lag", replica, r -> r.lagMillis < 0 ? Double.NaN : r.lagMillis / 1000.0)
+                    .baseUnit("seconds")
+                    .description("Age of the primary heartbeat read on the replica")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly()){
+            if(TransactionSynchronizationManager.isActualTransactionActive()){
+                markWrite();
+            }
+            return PRIMARY;
+        }
+        Client client = CLIENT.get();
+        long now = clock.millis();
+        if(insideWindow(now, client == null ? lastWriteMillis : client.lastWriteMillis)){
+            afterWrite.increment();
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if(replica.healthy){
+                if(client != null && insideWindow(now, lastWriteMillis)){
+                    client.readMissingWrites = true;
+                }
+                return replica.name;
+            }
+        }
+        fallbacks.increment();
+        return PRIMARY;
+    }
+
+    /**
+     * Starts the primary window of a read-write transaction, for the instance and the client of the
+     * thread, and again once it completes (the replicas can only receive its changes after the commit)
+     */
+    private void markWrite() {
+        Client client = CLIENT.get();
+        written(client, clock.millis());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                long now = clock.millis();
+                written(client, now);
+                if(client != null && status == STATUS_COMMITTED){
+                    client.onWrite.accept(now);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param writeMillis time of a write, 0 when there was none
+     * @return whether a healthy replica may still miss that write
+     */
+    private boolean insideWindow(long now, long writeMillis) {
+        return writeMillis > 0 && now - writeMillis <= primaryAfterWriteMillis;
+    }
+
+    private void written(Client client, long now) {
+        lastWriteMillis = now;
+        if(client != null){
+            client.lastWriteMillis = now;
+        }
+    }
+
+    /**
+     * Binds the client of a request to the current thread until unbindClient
+     * @param lastWriteMillis the time of its last write, 0 when unknown
+     * @param onWrite receives the time of each write the client commits in this thread
+     */
+    public Client bindClient(long lastWriteMillis, LongConsumer onWrite) {
+        Client client = new Client(this, lastWriteMillis, onWrite);
+        CLIENT.set(client);
+        return client;
+    }
+
+    public static void unbindClient() {
+        CLIENT.remove();
+    }
+
+    /**
+     * Whether the reads of the current client may miss a recent write of this instance: a read went
+     * to a replica, or would go, inside the window of that write. Their results must not be cached or
+     * validated with the catalog version. Always false for threads without a client
+     */
+    public static boolean readsMayMissWrites() {
+        Client client = CLIENT.get();
+        if(client == null){
+            return false;
+        }
+        ReplicaRoutingDataSource routing = client.routing;
+        long now = routing.clock.millis();
+        return client.readMissingWrites
+                || (!routing.insideWindow(now, client.lastWriteMillis) && routing.insideWindow(now, routing.lastWriteMillis));
+    }
+
+    /**
+     * @return how long the reads of a client go to the primary after its write
+     */
+    public Duration primaryAfterWrite() {
+        return Duration.ofMillis(primaryAfterWriteMillis);
+    }
+
+    /**
+     * Checks the replicas every interval, the first check runs right away.
+     * Until then no replica receives reads
+     */
+    public void start(Duration interval) {
+        primaryAfterWriteMillis = maxLagMillis + interval.toMillis();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the heartbeat on the primary and reads it on every replica
+     */
+    public void checkReplicas() {
+        long now = clock.millis();
+        try (Connection connection = primary.getConnection();
+             PreparedStatement beat = connection.prepareStatement("UPDATE replica_heartbeat SET beat_millis = ? WHERE id = 1")) {
+            beat.setLong(1, now);
+            beat.executeUpdate();
+        } catch (SQLException e) {
+            log.warn("Could not write the replica heartbeat on the primary: {}", e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            check(replica, now);
+        }
+    }
+
+    private void check(Replica replica, long now) {
+        try (Connection connection = replica.dataSource.getConnection();
+             PreparedStatement query = connection.prepareStatement("SELECT beat_millis FROM replica_heartbeat WHERE id = 1")) {
+            query.setQueryTimeout(5);
+            try (ResultSet result = query.executeQuery()) {
+                long lag = result.next() ? Math.max(0, now - result.getLong(1)) : Long.MAX_VALUE;
+                boolean healthy = lag <= maxLagMillis;
+                if(healthy != replica.healthy){
+                    log.info("Replica {} {} (lag {} ms)", replica.name, healthy ? "receives reads" : "is behind, reads go elsewhere", lag);
+                }
+                replica.lagMillis = lag == Long.MAX_VALUE ? -1 : lag;
+                replica.healthy = healthy;
+            }
+        } catch (SQLException e) {
+            if(replica.healthy){
+                log.warn("Replica {} is down, reads go elsewhere: {}", replica.name, e.getMessage());
+            }
+            replica.lagMillis = -1;
+            replica.healthy = false;
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(checker != null){
+            checker.shutdownNow();
+        }
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            if(dataSource instanceof Closeable closeable){
+                closeable.close();
+            }
+        }
+    }
+}
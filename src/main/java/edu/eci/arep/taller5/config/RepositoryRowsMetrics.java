@@ -0,0 +1,85 @@
+package edu.eci.arep.taller5.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how many rows each repository method returned or changed, as spring.data.repository.rows
+ * tagged with repository and method. The time of the same calls is spring.data.repository.invocations
+ * from Spring Boot. Streams and single entities are not counted
+ */
+public class RepositoryRowsMetrics implements BeanPostProcessor {
+    public static final String METRIC = "spring.data.repository.rows";
+    private final ObjectProvider<MeterRegistry> registry;
+    private final Map<Method, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public RepositoryRowsMetrics(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if(bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean){
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, information) -> proxyFactory.addAdvice(
+                            new RowsInterceptor(information.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    /**
+     * @return the rows of a repository result, -1 when they are not known without consuming it
+     */
+    static long rows(Method method, Object result) {
+        if(result instanceof Slice<?> slice){
+            return slice.getNumberOfElements();
+        }
+        if(result instanceof Collection<?> collection){
+            return collection.size();
+        }
+        if(result instanceof Optional<?> optional){
+            return optional.isPresent() ? 1 : 0;
+        }
+        if(result instanceof Number affected && method.isAnnotationPresent(Modifying.class)){
+            return affected.longValue();
+        }
+        return -1;
+    }
+
+    private final class RowsInterceptor implements MethodInterceptor {
+        private final String repository;
+
+        RowsInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            Method method = invocation.getMethod();
+            long rows = rows(method, result);
+            if(rows >= 0){
+                summaries.computeIfAbsent(method, m -> DistributionSummary.builder(METRIC)
+                                .baseUnit("rows")
+                                .tag("repository", repository)
+                                .tag("method", m.getName())
+                                .register(registry.getObject()))
+                        .record(rows);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.eci.arep.taller5.config;
+
+import edu.eci.arep.taller5.web.SqlInspectionFilter;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps the DataSource in a proxy that reports every statement to SqlInspectionFilter,
+ * only in the profiles that enable app.sql-inspection (test and staging).
+ * A routing DataSource is only reached through the DataSource bean, it is not wrapped again
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sql-inspection.enabled", havingValue = "true")
+public class SqlInspectionConfig {
+    @Bean
+    public static BeanPostProcessor sqlInspectionDataSourceProxy() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)
+                        && !(bean instanceof AbstractRoutingDataSource)){
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(new StatementListener())
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * One call per execution, a JDBC batch is one statement (one round-trip) whatever its size
+     */
+    static class StatementListener implements QueryExecutionListener {
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            String sql = queryInfoList.stream().map(QueryInfo::getQuery).collect(Collectors.joining("; "));
+            SqlInspectionFilter.record(sql, parameters(queryInfoList), execInfo.getElapsedTime());
+        }
+
+        private static String parameters(List<QueryInfo> queryInfoList) {
+            if(queryInfoList.isEmpty() || queryInfoList.get(0).getParametersList().isEmpty()){
+                return "[]";
+            }
+            List<List<ParameterSetOperation>> sets = queryInfoList.get(0).getParametersList();
+            String first = sets.get(0).stream()
+                    .sorted(Comparator.comparingInt(operation -> operation.getArgs()[0] instanceof Integer index ? index : 0))
+                    .map(operation -> String.valueOf(operation.getArgs()[1]))
+                    .collect(Collectors.joining(", ", "[", "]"));
+            return sets.size() == 1 ? first : first + " (+" + (sets.size() - 1) + " more sets)";
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.eci.arep.taller5.config;
+
+import edu.eci.arep.taller5.web.DatabaseBulkheadInterceptor;
+import edu.eci.arep.taller5.web.ListingResponseCacheFilter;
+import edu.eci.arep.taller5.web.LoadSheddingInterceptor;
+import edu.eci.arep.taller5.web.RateLimitInterceptor;
+import edu.eci.arep.taller5.web.SqlInspectionFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Filters and interceptors in front of the REST controllers
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final RateLimitInterceptor rateLimitInterceptor;
+    private final LoadSheddingInterceptor loadSheddingInterceptor;
+    private final DatabaseBulkheadInterceptor databaseBulkheadInterceptor;
+
+    @Autowired
+    public WebConfig(RateLimitInterceptor rateLimitInterceptor, LoadSheddingInterceptor loadSheddingInterceptor,
+                     DatabaseBulkheadInterceptor databaseBulkheadInterceptor) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.loadSheddingInterceptor = loadSheddingInterceptor;
+        this.databaseBulkheadInterceptor = databaseBulkheadInterceptor;
+    }
+
+    /**
+     * In order: the per-client rate limit, the load shedding of the reads and the bulkhead of the pool.
+     * The streaming export is not part of the latency the load shedding measures, and the change feed
+     * neither: it is open for minutes and never uses a connection
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/properties", "/properties/**");
+        registry.addInterceptor(loadSheddingInterceptor).addPathPatterns("/properties", "/properties/**")
+                .excludePathPatterns("/properties/export", "/properties/changes");
+        registry.addInterceptor(databaseBulkheadInterceptor).addPathPatterns("/properties", "/properties/**")
+                .excludePathPatterns("/properties/changes");
+    }
+
+    /**
+     * The listing response cache only runs on the paginated listings, the rest of the requests never go through it
+     */
+    @Bean
+    public FilterRegistrationBean<ListingResponseCacheFilter> listingResponseCacheRegistration(
+            ListingResponseCacheFilter filter,
+            @Value("${app.cache.listing-responses.enabled:true}") boolean enabled) {
+        FilterRegistrationBean<ListingResponseCacheFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/properties", "/properties/summary");
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+    /**
+     * The statement counter goes first so it also sees the requests answered by the other filters
+     */
+    @Bean
+    public FilterRegistrationBean<SqlInspectionFilter> sqlInspectionRegistration(
+            SqlInspectionFilter filter,
+            @Value("${app.sql-inspection.enabled:false}") boolean enabled) {
+        FilterRegistrationBean<SqlInspectionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+}
@@ -2,12 +2,20 @@ package edu.eci.arep.taller5.controller;
 
 
 import edu.eci.arep.taller5.exception.AppException;
+import edu.eci.arep.taller5.model.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,16 +24,48 @@ import java.util.Map;
  */
 @RestControllerAdvice
 public class ErrorHandler {
+    public static final String ERRORS_METRIC = "app.errors";
+    private final Map<ErrorCode, Counter> errorCounters = new EnumMap<>(ErrorCode.class);
+
+    /**
+     * One counter per ErrorCode, registered from the start so every code is scraped even at zero
+     */
+    @Autowired
+    public ErrorHandler(MeterRegistry registry) {
+        for (ErrorCode code : ErrorCode.values()) {
+            errorCounters.put(code, Counter.builder(ERRORS_METRIC)
+                    .description("Error responses by error code")
+                    .tag("code", code.name())
+                    .tag("status", String.valueOf(code.getHttpStatus()))
+                    .register(registry));
+        }
+    }
+
     /**
      * Capture the exception of type AppException
      */
     @ExceptionHandler(AppException.class)
     public ResponseEntity<ProblemDetail> handle(AppException ex){
-        var pd = ProblemDetail.forStatus(ex.getHttpStatus());
-        pd.setTitle(ex.getErrorCode().name());
-        pd.setDetail(ex.getMessage());
-        pd.setProperty("code", ex.getErrorCode().name());
-        return ResponseEntity.status(ex.getHttpStatus()).body(pd);
+        errorCounters.get(ex.getErrorCode()).increment();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ex.getHttpStatus());
+        if(ex.getRetryAfter() != null){
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.retryAfterSeconds()));
+        }
+        return response.body(ex.toProblemDetail());
+    }
+    /**
+     * Capture the version conflicts, the row was changed by another request
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ProblemDetail> handle(OptimisticLockingFailureException ex){
+        return handle(AppException.from(ex));
+    }
+    /**
+     * Capture the writes rejected by a constraint of the database
+     */
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<ProblemDetail> handle(DataIntegrityViolationException ex){
+        return handle(AppException.from(ex));
     }
     /**
      * Capture the exception of type MethodArgumentNotValid
@@ -44,6 +84,7 @@ public class ErrorHandler {
                 .toList();
         pd.setProperty("errors", errors);
         pd.setProperty("code", "BAD_REQUEST");
+        errorCounters.get(ErrorCode.BAD_REQUEST).increment();
         return ResponseEntity.badRequest().body(pd);
     }
     /**
@@ -55,6 +96,7 @@ public class ErrorHandler {
         pd.setTitle("INTERNAL_ERROR");
         pd.setDetail(ex.getMessage());
         pd.setProperty("code", "INTERNAL_ERROR");
+        errorCounters.get(ErrorCode.INTERNAL_ERROR).increment();
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(pd);
     }
 
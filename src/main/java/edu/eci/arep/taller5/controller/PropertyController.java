@@ -1,14 +1,41 @@
 package edu.eci.arep.taller5.controller;
 
+import edu.eci.arep.taller5.config.ReplicaRoutingDataSource;
+import edu.eci.arep.taller5.exception.PreconditionFailedException;
+import edu.eci.arep.taller5.model.DTO.BatchItemResultDTO;
+import edu.eci.arep.taller5.model.DTO.CursorPageDTO;
+import edu.eci.arep.taller5.model.DTO.ImportReportDTO;
+import edu.eci.arep.taller5.model.DTO.PageDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
 import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.DTO.WriteTicketDTO;
 import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import edu.eci.arep.taller5.service.PropertyChangeFeed;
+import edu.eci.arep.taller5.service.PropertyExportService;
 import edu.eci.arep.taller5.service.PropertyService;
+import edu.eci.arep.taller5.service.PropertyWriteQueue;
+import edu.eci.arep.taller5.service.Imp.PropertyBatchServiceImp;
+import edu.eci.arep.taller5.service.catalog.CatalogVersion;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
 
 import static edu.eci.arep.taller5.mapper.PropertyMapper.toProperty;
 
@@ -16,35 +43,177 @@ import static edu.eci.arep.taller5.mapper.PropertyMapper.toProperty;
 @RequestMapping("/properties")
 @CrossOrigin("*")
 public class PropertyController {
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
     private final PropertyService propertyService;
+    private final PropertyBatchService propertyBatchService;
+    private final PropertyExportService propertyExportService;
+    private final CatalogVersion catalogVersion;
+    private final PropertyWriteQueue propertyWriteQueue;
+    private final PropertyChangeFeed propertyChangeFeed;
     @Autowired
-    public PropertyController(PropertyService propertyService) {
+    public PropertyController(PropertyService propertyService, PropertyBatchService propertyBatchService,
+                              PropertyExportService propertyExportService, CatalogVersion catalogVersion,
+                              PropertyWriteQueue propertyWriteQueue, PropertyChangeFeed propertyChangeFeed) {
         this.propertyService = propertyService;
+        this.propertyBatchService = propertyBatchService;
+        this.propertyExportService = propertyExportService;
+        this.catalogVersion = catalogVersion;
+        this.propertyWriteQueue = propertyWriteQueue;
+        this.propertyChangeFeed = propertyChangeFeed;
     }
 //    @GetMapping
 //    public ResponseEntity<List<Property>> getAllProperties() {
 //        return ResponseEntity.ok(propertyService.getAll());
 //    }
     /**
-    * Get Properties with filters by location, price and size
-     * make pagination sending current page and size
+    * Get Properties with filters by location, price, size and price per square meter
+     * make pagination sending current page and size, sort accepts several fields
+     * @param count false to skip the total elements and return a Slice
+     * @return 304 without reading the properties when the catalog did not change since the client's copy
      */
     @GetMapping
-    public ResponseEntity<Page<Property>> getPaginatedProperties(@RequestParam(required = false) String location,
-                                                                 @RequestParam(required = false) Double price,
-                                                                 @RequestParam(required = false) Double sizeProperty,
-                                                                 Pageable pageable) {
-        return ResponseEntity.ok(propertyService.getPaginatedProperties(location, price, sizeProperty, pageable));
+    public ResponseEntity<Slice<Property>> getPaginatedProperties(PropertyFilter filter,
+                                                                  @RequestParam(defaultValue = "true") boolean count,
+                                                                  Pageable pageable, WebRequest request) {
+        if(catalogNotModified(request)){
+            return null;
+        }
+        if(!count){
+            return ResponseEntity.ok(propertyService.getSlicedProperties(filter, pageable));
+        }
+        return ResponseEntity.ok(propertyService.getPaginatedProperties(filter, pageable));
+    }
+
+    /**
+     * Get the listing rows with the same filters as the paginated properties
+     * only the listed columns are read and the page has just content, page, size and totals
+     * @param descriptionLength optional max characters of each description
+     * @return 304 without reading the properties when the catalog did not change since the client's copy
+     */
+    @GetMapping("summary")
+    public ResponseEntity<PageDTO<PropertySummaryDTO>> getPropertySummaries(PropertyFilter filter,
+                                                                           @RequestParam(required = false) Integer descriptionLength,
+                                                                           Pageable pageable, WebRequest request) {
+        if(catalogNotModified(request)){
+            return null;
+        }
+        return ResponseEntity.ok(propertyService.getPropertySummaries(filter, descriptionLength, pageable));
+    }
+
+    /**
+     * Get the count, min, max and averages of price and size, the average price per square meter and
+     * the properties per price bucket, with the same filters as the paginated properties
+     * @return 304 without computing them when the catalog did not change since the client's copy
+     */
+    @GetMapping("stats")
+    public ResponseEntity<PropertyStatsDTO> getPropertyStats(PropertyFilter filter, WebRequest request) {
+        if(catalogNotModified(request)){
+            return null;
+        }
+        return ResponseEntity.ok(propertyService.getStats(filter));
+    }
+
+    /**
+     * Get Properties with filters by location, price and size
+     * using keyset pagination, the cost of a page does not depend on how deep it is
+     * @param sort the sort key: id, price or size
+     * @param after the nextCursor of the previous page
+     * @param size the page size
+     * @return 304 without reading the properties when the catalog did not change since the client's copy
+     */
+    @GetMapping("cursor")
+    public ResponseEntity<CursorPageDTO<Property>> getPropertiesByCursor(PropertyFilter filter,
+                                                                        @RequestParam(defaultValue = "id") String sort,
+                                                                        @RequestParam(required = false) String after,
+                                                                        @RequestParam(defaultValue = "20") int size,
+                                                                        WebRequest request) {
+        if(catalogNotModified(request)){
+            return null;
+        }
+        return ResponseEntity.ok(propertyService.getPropertiesAfter(filter, sort, after, size));
+    }
+
+    /**
+     * Export the properties with filters by location, price and size
+     * streaming them from a database cursor, memory does not depend on the number of rows
+     * @param format ndjson or csv
+     */
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportProperties(PropertyFilter filter,
+                                                                  @RequestParam(defaultValue = "ndjson") String format) {
+        MediaType mediaType = MediaType.parseMediaType(propertyExportService.mediaType(format));
+        StreamingResponseBody body = out -> propertyExportService.export(filter, format, out);
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("properties." + format).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Feed of the property changes as Server-Sent Events: "property" events with the change
+     * (type, id and the new state) and "reset" events when the client must reload the listing
+     * @param lastEventId the id of the last event received, sent by EventSource when it reconnects
+     */
+    @GetMapping(value = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return propertyChangeFeed.subscribe(lastEventId);
     }
 
     /**
      * Get Property by id
      * @param id Property ID
-     * @return Property
+     * @return Property, or 304 without body when the client's ETag or date is still valid
      */
     @GetMapping("{id}")
-    public ResponseEntity<Property> getPropertyById(@PathVariable Long id) {
-        return ResponseEntity.ok(propertyService.getById(id));
+    public ResponseEntity<Property> getPropertyById(@PathVariable Long id, WebRequest request) {
+        Property property = propertyService.getById(id);
+        String etag = propertyEtag(property);
+        long lastModified = property.getUpdatedAt() == null ? -1 : property.getUpdatedAt().toEpochMilli();
+        if(request.checkNotModified(etag, lastModified)){
+            return null;
+        }
+        return ResponseEntity.ok(property);
+    }
+
+    private static String propertyEtag(Property property) {
+        return "\"" + property.getId() + "-" + property.getVersion() + "\"";
+    }
+
+    /**
+     * Reads the version from an If-Match header with the ETag of GET {id}
+     * @return the expected version, null without header or with *
+     * @throws PreconditionFailedException when the ETag is not one of this property
+     */
+    private static Long expectedVersion(Long id, String ifMatch) {
+        if(ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")){
+            return null;
+        }
+        String etag = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if(etag.startsWith(prefix) && etag.endsWith("\"") && etag.length() > prefix.length() + 1){
+            try {
+                return Long.parseLong(etag.substring(prefix.length(), etag.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // falls through to the precondition error
+            }
+        }
+        throw new PreconditionFailedException("The ETag " + etag + " does not match the property " + id);
+    }
+
+    /**
+     * Checks the listing validators against the catalog change counter
+     * ETag and Last-Modified are added to the response in both cases, unless the reads of the request
+     * may miss a recent write (ReplicaRoutingDataSource): the body could be older than the catalog version
+     * @return true when the response status is already 304
+     */
+    private boolean catalogNotModified(WebRequest request) {
+        if(ReplicaRoutingDataSource.readsMayMissWrites()){
+            return false;
+        }
+        return request.checkNotModified(catalogVersion.etag(), catalogVersion.lastModified().toEpochMilli());
     }
 
     /**
@@ -59,24 +228,131 @@ public class PropertyController {
     }
 
     /**
-     * Updates an existing property
+     * Updates an existing property. With the respond-async preference and no If-Match the update is
+     * queued when the write queue is enabled: updates of the same property are coalesced and written
+     * in batches. A conditional update is always synchronous, its precondition is answered right away
      * @param id the property to update
      * @param property the values of the property
-     * @return The updated property
+     * @param ifMatch optional ETag of the property, the update is only applied while the property has that version
+     * @param prefer the Prefer headers, respond-async asks for the queue
+     * @return The updated property with its new ETag, or 202 with the ticket to follow the queued update
      */
     @PutMapping("{id}")
-    public ResponseEntity<Property> updateProperty(@PathVariable Long id, @Valid @RequestBody PropertyDTO property) {
-        return ResponseEntity.ok(propertyService.update(id, toProperty(property)));
+    public ResponseEntity<?> updateProperty(@PathVariable Long id, @Valid @RequestBody PropertyDTO property,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                            @RequestHeader(value = PREFER, required = false) List<String> prefer) {
+        if(ifMatch == null && prefers(prefer, RESPOND_ASYNC)){
+            if(!propertyWriteQueue.isEnabled()){
+                propertyService.update(id, toProperty(property), null);
+                return ResponseEntity.ok(new WriteTicketDTO(null, id, WriteTicketDTO.Status.APPLIED, null));
+            }
+            WriteTicketDTO ticket = propertyWriteQueue.submit(id, property);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/properties/writes/" + ticket.getTicket()))
+                    .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                    .body(ticket);
+        }
+        Property updated = propertyService.update(id, toProperty(property), expectedVersion(id, ifMatch));
+        // Only a committed write replaces the queued update, a rejected one (404, 412) leaves it queued
+        propertyWriteQueue.supersede(id, updated.getVersion());
+        return ResponseEntity.ok().eTag(propertyEtag(updated)).body(updated);
+    }
+
+    /**
+     * Whether the Prefer headers (RFC 7240) contain the preference: a comma-separated list of
+     * preferences, each one a case-insensitive token with an optional value and parameters
+     */
+    private static boolean prefers(List<String> prefer, String preference) {
+        if(prefer == null){
+            return false;
+        }
+        for (String header : prefer) {
+            for (String item : header.split(",")) {
+                String token = item.split("[;=]", 2)[0].trim();
+                if(token.equalsIgnoreCase(preference)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the state of a queued update
+     * @param ticket the ticket returned when the update was queued
+     */
+    @GetMapping("writes/{ticket}")
+    public ResponseEntity<WriteTicketDTO> getWriteTicket(@PathVariable String ticket) {
+        return ResponseEntity.ok(propertyWriteQueue.getTicket(ticket));
     }
 
     /**
      * Delete an existing property
      * @param id The property ID to delete
+     * @param ifMatch optional ETag of the property, the delete is only applied while the property has that version
      */
     @DeleteMapping("{id}")
-    public ResponseEntity<Void> deleteProperty(@PathVariable Long id) {
-        propertyService.delete(id);
+    public ResponseEntity<Void> deleteProperty(@PathVariable Long id,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        propertyService.delete(id, expectedVersion(id, ifMatch));
+        propertyWriteQueue.supersede(id, null);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Save new properties in batches
+     * @param properties DTO Objects with the values of the new properties
+     * @return The result of each property, in the same order
+     */
+    @PostMapping("batch")
+    public ResponseEntity<List<BatchItemResultDTO>> createProperties(@RequestBody List<PropertyDTO> properties) {
+        return ResponseEntity.ok(propertyBatchService.createAll(properties));
+    }
+
+    /**
+     * Updates existing properties in batches
+     * @param properties the values of the properties, each one with its id
+     * @return The result of each property, in the same order
+     */
+    @PutMapping("batch")
+    public ResponseEntity<List<BatchItemResultDTO>> updateProperties(@RequestBody List<PropertyDTO> properties) {
+        return ResponseEntity.ok(propertyBatchService.updateAll(properties));
+    }
+
+    /**
+     * Delete existing properties in batches
+     * @param ids The property IDs to delete
+     * @return The result of each id, in the same order
+     */
+    @DeleteMapping("batch")
+    public ResponseEntity<List<BatchItemResultDTO>> deleteProperties(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(propertyBatchService.deleteAll(ids));
+    }
+
+    /**
+     * Import new properties from a stream, the body is read line by line and never held in memory
+     * @param body newline-delimited JSON or CSV with a header line
+     * @return The imported and rejected lines and the throughput
+     */
+    @PostMapping(value = "import", consumes = {PropertyBatchServiceImp.NDJSON, PropertyBatchServiceImp.CSV})
+    public ResponseEntity<ImportReportDTO> importProperties(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                            InputStream body) throws IOException {
+        return ResponseEntity.ok(propertyBatchService.importProperties(body, contentType));
+    }
+
+    /**
+     * Import new properties like importProperties, reporting the progress while the feed is read
+     * @param body newline-delimited JSON or CSV with a header line
+     * @return NDJSON with the totals after each chunk, the last line is the report with the rejected lines
+     */
+    @PostMapping(value = "import", consumes = {PropertyBatchServiceImp.NDJSON, PropertyBatchServiceImp.CSV},
+            produces = PropertyBatchServiceImp.NDJSON)
+    public ResponseEntity<StreamingResponseBody> importPropertiesWithProgress(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                                              InputStream body) {
+        StreamingResponseBody progress = out -> propertyBatchService.importProperties(body, contentType, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(PropertyBatchServiceImp.NDJSON))
+                .body(progress);
+    }
+
 }
@@ -1,12 +1,39 @@
 package edu.eci.arep.taller5.exception;
 
 import edu.eci.arep.taller5.model.ErrorCode;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ProblemDetail;
+
+import java.time.Duration;
 
 public class AppException extends RuntimeException{
     private final ErrorCode errorCode;
+    private final Duration retryAfter;
     protected AppException(ErrorCode errorCode, String message) {
+        this(errorCode, message, null);
+    }
+    protected AppException(ErrorCode errorCode, String message, Duration retryAfter) {
         super(message);
         this.errorCode = errorCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * The error sent to the client for an exception raised while writing a property, the same one
+     * ErrorHandler sends. Unexpected exceptions get a generic message, their text stays in the logs
+     */
+    public static AppException from(RuntimeException e) {
+        if (e instanceof AppException app) {
+            return app;
+        }
+        if (e instanceof OptimisticLockingFailureException) {
+            return new ConflictException("The property was modified by another request");
+        }
+        if (e instanceof DataIntegrityViolationException) {
+            return new ConflictException("The property violates a constraint of the database");
+        }
+        return new InternalErrorException("The property could not be written");
     }
     public ErrorCode getErrorCode() {
         return errorCode;
@@ -15,4 +42,31 @@ public class AppException extends RuntimeException{
         return errorCode.getHttpStatus();
     }
 
+    /**
+     * @return how long the client should wait before retrying, null when a retry does not help
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Body sent to the client for this error
+     */
+    public ProblemDetail toProblemDetail() {
+        var pd = ProblemDetail.forStatus(getHttpStatus());
+        pd.setTitle(errorCode.name());
+        pd.setDetail(getMessage());
+        pd.setProperty("code", errorCode.name());
+        if(retryAfter != null){
+            pd.setProperty("retryAfter", retryAfterSeconds());
+        }
+        return pd;
+    }
+
+    /**
+     * Retry-After in whole seconds, rounded up so the client never retries too early
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
 }
@@ -0,0 +1,9 @@
+package edu.eci.arep.taller5.exception;
+
+import edu.eci.arep.taller5.model.ErrorCode;
+
+public class InternalErrorException extends AppException {
+    public InternalErrorException(String message) {
+        super(ErrorCode.INTERNAL_ERROR, message);
+    }
+}
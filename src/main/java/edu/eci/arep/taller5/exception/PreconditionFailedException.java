@@ -0,0 +1,9 @@
+package edu.eci.arep.taller5.exception;
+
+import edu.eci.arep.taller5.model.ErrorCode;
+
+public class PreconditionFailedException extends AppException {
+    public PreconditionFailedException(String message) {
+        super(ErrorCode.PRECONDITION_FAILED, message);
+    }
+}
@@ -0,0 +1,14 @@
+package edu.eci.arep.taller5.exception;
+
+import edu.eci.arep.taller5.model.ErrorCode;
+
+import java.time.Duration;
+
+public class ServiceUnavailableException extends AppException {
+    public ServiceUnavailableException(String message) {
+        super(ErrorCode.SERVICE_UNAVAILABLE, message);
+    }
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(ErrorCode.SERVICE_UNAVAILABLE, message, retryAfter);
+    }
+}
@@ -0,0 +1,11 @@
+package edu.eci.arep.taller5.exception;
+
+import edu.eci.arep.taller5.model.ErrorCode;
+
+import java.time.Duration;
+
+public class TooManyRequestsException extends AppException {
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(ErrorCode.TOO_MANY_REQUESTS, message, retryAfter);
+    }
+}
@@ -0,0 +1,29 @@
+package edu.eci.arep.taller5.exception;
+
+import org.springframework.http.ProblemDetail;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bean validation errors of an object validated outside the controller arguments
+ */
+public class ValidationException extends BadRequestException {
+    private final List<Map<String, Object>> errors;
+
+    public ValidationException(List<Map<String, Object>> errors) {
+        super("Validation Failed");
+        this.errors = errors;
+    }
+
+    public List<Map<String, Object>> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        ProblemDetail pd = super.toProblemDetail();
+        pd.setProperty("errors", errors);
+        return pd;
+    }
+}
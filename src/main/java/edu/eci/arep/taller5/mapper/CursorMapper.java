@@ -0,0 +1,35 @@
+package edu.eci.arep.taller5.mapper;
+
+import edu.eci.arep.taller5.exception.BadRequestException;
+import edu.eci.arep.taller5.model.PropertyCursor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Converts PropertyCursor to the opaque token sent to clients and back
+ */
+public class CursorMapper {
+    private static final String SEPARATOR = ":";
+
+    public static String toToken(PropertyCursor cursor){
+        String raw = cursor.getSortKey() + SEPARATOR + cursor.getValue() + SEPARATOR + cursor.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws BadRequestException When the token was not produced by toToken
+     */
+    public static PropertyCursor toCursor(String token){
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if(parts.length != 3 || !PropertyCursor.SORT_KEYS.contains(parts[0])){
+                throw new BadRequestException("Invalid cursor " + token);
+            }
+            return new PropertyCursor(parts[0], Double.valueOf(parts[1]), Long.valueOf(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor " + token);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package edu.eci.arep.taller5.model;
+
+import java.time.Instant;
+
+/**
+ * Published by CatalogVersion after every check of the catalog shared with the other instances
+ * @param rows the properties in the database
+ * @param lastUpdate the latest updated_at, null without properties
+ */
+public record CatalogCheckedEvent(long rows, Instant lastUpdate) {
+}
@@ -0,0 +1,46 @@
+package edu.eci.arep.taller5.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.ProblemDetail;
+
+/**
+ * Result of one item of a batch request, error has the same body a single-item request would get
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResultDTO {
+    private final int index;
+    private final int status;
+    private final Long id;
+    private final ProblemDetail error;
+
+    public BatchItemResultDTO(int index, int status, Long id, ProblemDetail error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static BatchItemResultDTO success(int index, int status, Long id) {
+        return new BatchItemResultDTO(index, status, id, null);
+    }
+
+    public static BatchItemResultDTO failure(int index, Long id, ProblemDetail error) {
+        return new BatchItemResultDTO(index, error.getStatus(), id, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public ProblemDetail getError() {
+        return error;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.eci.arep.taller5.model.DTO;
+
+import java.util.List;
+
+/**
+ * Keyset page sent to clients, nextCursor is null on the last page
+ */
+public class CursorPageDTO<T> {
+    private final List<T> content;
+    private final int size;
+    private final String nextCursor;
+
+    public CursorPageDTO(List<T> content, int size, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,81 @@
+package edu.eci.arep.taller5.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a streaming import, only the first rejected lines are detailed.
+ * The progress reported after each chunk has no rejected lines
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportReportDTO {
+    private final long lines;
+    private final long imported;
+    private final long rejected;
+    private final long elapsedMillis;
+    private final double rowsPerSecond;
+    private final List<RejectedLine> rejectedLines;
+
+    public ImportReportDTO(long lines, long imported, long rejected, long elapsedMillis, List<RejectedLine> rejectedLines) {
+        this.lines = lines;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        this.rejectedLines = rejectedLines;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public List<RejectedLine> getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * A line that was not imported and why
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RejectedLine {
+        private final long line;
+        private final String detail;
+        private final List<Map<String, Object>> errors;
+
+        public RejectedLine(long line, String detail, List<Map<String, Object>> errors) {
+            this.line = line;
+            this.detail = detail;
+            this.errors = errors;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public List<Map<String, Object>> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package edu.eci.arep.taller5.model.DTO;
+
+import java.util.List;
+
+/**
+ * Price and size statistics of the properties matching a filter, the min, max and averages
+ * are null when no matching property has the value
+ */
+public class PropertyStatsDTO {
+    private final long count;
+    private final Double minPrice;
+    private final Double maxPrice;
+    private final Double avgPrice;
+    private final Double minSize;
+    private final Double maxSize;
+    private final Double avgSize;
+    private final Double avgPricePerM2;
+    private final double priceBucketWidth;
+    private final List<PriceBucket> priceBuckets;
+
+    public PropertyStatsDTO(long count, Double minPrice, Double maxPrice, Double avgPrice,
+                            Double minSize, Double maxSize, Double avgSize, Double avgPricePerM2,
+                            double priceBucketWidth, List<PriceBucket> priceBuckets) {
+        this.count = count;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.avgPrice = avgPrice;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.avgSize = avgSize;
+        this.avgPricePerM2 = avgPricePerM2;
+        this.priceBucketWidth = priceBucketWidth;
+        this.priceBuckets = priceBuckets;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public Double getAvgPrice() {
+        return avgPrice;
+    }
+
+    public Double getMinSize() {
+        return minSize;
+    }
+
+    public Double getMaxSize() {
+        return maxSize;
+    }
+
+    public Double getAvgSize() {
+        return avgSize;
+    }
+
+    public Double getAvgPricePerM2() {
+        return avgPricePerM2;
+    }
+
+    public double getPriceBucketWidth() {
+        return priceBucketWidth;
+    }
+
+    /**
+     * Non-empty price ranges in ascending order, each one from inclusive to exclusive
+     */
+    public List<PriceBucket> getPriceBuckets() {
+        return priceBuckets;
+    }
+
+    public record PriceBucket(double from, double to, long count) {
+    }
+}
@@ -0,0 +1,40 @@
+package edu.eci.arep.taller5.model.DTO;
+
+/**
+ * Property row of the listing, selected column by column so no entity is loaded
+ */
+public class PropertySummaryDTO {
+    private final Long id;
+    private final String address;
+    private final Double price;
+    private final Double size;
+    private final String description;
+
+    public PropertySummaryDTO(Long id, String address, Double price, Double size, String description) {
+        this.id = id;
+        this.address = address;
+        this.price = price;
+        this.size = size;
+        this.description = description;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public Double getSize() {
+        return size;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
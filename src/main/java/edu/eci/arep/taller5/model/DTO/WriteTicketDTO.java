@@ -0,0 +1,44 @@
+package edu.eci.arep.taller5.model.DTO;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.ProblemDetail;
+
+/**
+ * Completion handle of a queued update
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WriteTicketDTO {
+    /**
+     * PENDING: waiting for the flusher. APPLIED: its values were written.
+     * SUPERSEDED: a newer update of the same property was written instead. FAILED: see error
+     */
+    public enum Status { PENDING, APPLIED, SUPERSEDED, FAILED }
+
+    private final String ticket;
+    private final Long id;
+    private final Status status;
+    private final ProblemDetail error;
+
+    public WriteTicketDTO(String ticket, Long id, Status status, ProblemDetail error) {
+        this.ticket = ticket;
+        this.id = id;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String getTicket() {
+        return ticket;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public ProblemDetail getError() {
+        return error;
+    }
+}
@@ -7,7 +7,10 @@ public enum ErrorCode {
     NOT_FOUND(404),
     BAD_REQUEST(400),
     CONFLICT(409),
-    INTERNAL_ERROR(500);
+    PRECONDITION_FAILED(412),
+    TOO_MANY_REQUESTS(429),
+    INTERNAL_ERROR(500),
+    SERVICE_UNAVAILABLE(503);
 
     private final int httpStatus;
     ErrorCode(int httpStatus) { this.httpStatus = httpStatus; }
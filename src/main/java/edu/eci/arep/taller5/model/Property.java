@@ -1,22 +1,53 @@
 package edu.eci.arep.taller5.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+
+import java.time.Instant;
+import java.util.Locale;
 
 /**
  * Property model (represents property table)
+ * Ids come from a pooled sequence instead of IDENTITY so Hibernate can batch the inserts
+ * version is the optimistic lock and, with updatedAt, the validator of the HTTP conditional requests
+ * The schema comes from the Flyway migrations in db/migration, the indexes are declared here too so they match.
+ * price and size are indexed with id, the same order the range filters and the keyset pages sort by
  */
 @Entity
+@Table(name = "property", indexes = {
+        @Index(name = "idx_property_price", columnList = "price, id"),
+        @Index(name = "idx_property_size", columnList = "size, id"),
+        @Index(name = "idx_property_address_lower", columnList = "address_lower"),
+        @Index(name = "idx_property_price_per_m2", columnList = "price_per_m2, id")
+})
 public class Property {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "property_seq")
+    @SequenceGenerator(name = "property_seq", sequenceName = "property_seq", allocationSize = 50)
     private Long id;
     private String address;
+    // lower-cased copy of address so the location filter compares the column as is and can use its index
+    @Column(name = "address_lower")
+    private String addressLower;
     private Double price;
     private Double size;
+    // stored price / size so the price per square meter filter is a plain indexed range
+    @Column(name = "price_per_m2")
+    private Double pricePerM2;
     private String description;
+    @Version
+    private Long version;
+    private Instant updatedAt;
 
     public Property() {}
     public Property(String address, Double price, Double size, String description) {
@@ -41,6 +72,11 @@ public class Property {
         return address;
     }
 
+    @JsonIgnore
+    public String getAddressLower() {
+        return addressLower;
+    }
+
     public Double getPrice() {
         return price;
     }
@@ -49,10 +85,23 @@ public class Property {
         return size;
     }
 
+    @JsonIgnore
+    public Double getPricePerM2() {
+        return pricePerM2;
+    }
+
     public String getDescription() {
         return description;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
@@ -72,4 +121,24 @@ public class Property {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Refreshes the derived columns and the modification time, the entity callbacks call it on every write
+     * and the single-statement update calls it before binding the values
+     */
+    @PrePersist
+    @PreUpdate
+    public void touch() {
+        this.addressLower = address == null ? null : address.toLowerCase(Locale.ROOT);
+        this.pricePerM2 = price == null || size == null || size <= 0 ? null : price / size;
+        this.updatedAt = Instant.now();
+    }
 }
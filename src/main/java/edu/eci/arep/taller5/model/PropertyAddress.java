@@ -0,0 +1,12 @@
+package edu.eci.arep.taller5.model;
+
+import java.time.Instant;
+
+/**
+ * Projection with the columns needed to index the address of a property
+ */
+public interface PropertyAddress {
+    Long getId();
+    String getAddress();
+    Instant getUpdatedAt();
+}
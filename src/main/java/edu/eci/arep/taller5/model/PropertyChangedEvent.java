@@ -0,0 +1,45 @@
+package edu.eci.arep.taller5.model;
+
+/**
+ * Published by the service after a property is created, updated or deleted
+ */
+public class PropertyChangedEvent {
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final Long id;
+    private final Property property;
+
+    public PropertyChangedEvent(Type type, Long id, Property property) {
+        this.type = type;
+        this.id = id;
+        this.property = property;
+    }
+
+    public static PropertyChangedEvent created(Property property) {
+        return new PropertyChangedEvent(Type.CREATED, property.getId(), property);
+    }
+
+    public static PropertyChangedEvent updated(Property property) {
+        return new PropertyChangedEvent(Type.UPDATED, property.getId(), property);
+    }
+
+    public static PropertyChangedEvent deleted(Long id) {
+        return new PropertyChangedEvent(Type.DELETED, id, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * The new state of the property, null when it was deleted
+     */
+    public Property getProperty() {
+        return property;
+    }
+}
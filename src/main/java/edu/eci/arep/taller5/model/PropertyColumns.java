@@ -0,0 +1,11 @@
+package edu.eci.arep.taller5.model;
+
+/**
+ * Projection with the columns the listings filter and sort by
+ */
+public interface PropertyColumns {
+    Long getId();
+    String getAddress();
+    Double getPrice();
+    Double getSize();
+}
@@ -0,0 +1,54 @@
+package edu.eci.arep.taller5.model;
+
+import java.util.List;
+
+/**
+ * Keyset position: the sort key value and id of the last property returned
+ */
+public class PropertyCursor {
+    public static final List<String> SORT_KEYS = List.of("id", "price", "size");
+
+    private final String sortKey;
+    private final Double value;
+    private final Long id;
+
+    public PropertyCursor(String sortKey, Double value, Long id) {
+        this.sortKey = sortKey;
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * Position before the first row, prices and sizes are never negative and ids are positive
+     * @param sortKey the sort key of the listing
+     */
+    public static PropertyCursor start(String sortKey) {
+        return new PropertyCursor(sortKey, -Double.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    /**
+     * Position right after the given property
+     * @param sortKey the sort key of the listing
+     * @param last the last property of the current page
+     */
+    public static PropertyCursor after(String sortKey, Property last) {
+        Double value = switch (sortKey) {
+            case "price" -> last.getPrice();
+            case "size" -> last.getSize();
+            default -> last.getId().doubleValue();
+        };
+        return new PropertyCursor(sortKey, value, last.getId());
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,35 @@
+package edu.eci.arep.taller5.model;
+
+import java.util.Locale;
+
+/**
+ * Listing filters, every one optional. Bound from the query parameters of the listing endpoints
+ * and used as the key of the count cache, the location is trimmed and lower-cased so equivalent
+ * filters are equal
+ * @param location part of the address
+ * @param price min price
+ * @param maxPrice max price
+ * @param sizeProperty min size
+ * @param maxSize max size
+ * @param minPricePerM2 min price per square meter
+ * @param maxPricePerM2 max price per square meter
+ */
+public record PropertyFilter(String location, Double price, Double maxPrice, Double sizeProperty, Double maxSize,
+                             Double minPricePerM2, Double maxPricePerM2) {
+    public static final PropertyFilter NONE = new PropertyFilter(null, null, null, null, null, null, null);
+
+    public PropertyFilter {
+        location = location == null || location.isBlank() ? null : location.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Filter with only the original location, min price and min size
+     */
+    public static PropertyFilter of(String location, Double price, Double sizeProperty) {
+        return new PropertyFilter(location, price, null, sizeProperty, null, null, null);
+    }
+
+    public PropertyFilter withLocation(String location) {
+        return new PropertyFilter(location, price, maxPrice, sizeProperty, maxSize, minPricePerM2, maxPricePerM2);
+    }
+}
@@ -0,0 +1,175 @@
+package edu.eci.arep.taller5.model;
+
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable aggregate of the price and size of a set of properties: counts, sums, min and max
+ * and the number of properties in each price bucket. Built from the GROUP BY rows of the database
+ * or kept up to date one property at a time with add and remove.
+ * Removing the current min or max can not tell the new one, the aggregate is then stale until its
+ * min and max are recomputed from the values
+ */
+public final class PropertyStats {
+    private final double bucketWidth;
+    private long count;
+    private final Column price = new Column();
+    private final Column size = new Column();
+    private final Column pricePerM2 = new Column();
+    private final TreeMap<Long, Long> priceBuckets = new TreeMap<>();
+
+    public PropertyStats(double bucketWidth) {
+        this.bucketWidth = bucketWidth;
+    }
+
+    public void add(Double price, Double size) {
+        count++;
+        this.price.add(price);
+        this.size.add(size);
+        this.pricePerM2.add(pricePerM2(price, size));
+        if (price != null) {
+            priceBuckets.merge(bucket(price), 1L, Long::sum);
+        }
+    }
+
+    public void remove(Double price, Double size) {
+        count--;
+        this.price.remove(price);
+        this.size.remove(size);
+        this.pricePerM2.remove(pricePerM2(price, size));
+        if (price != null) {
+            priceBuckets.computeIfPresent(bucket(price), (bucket, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    /**
+     * Adds the aggregates of one price bucket, as read by the GROUP BY query
+     * @param bucket the price bucket, null for the properties without price
+     */
+    public void merge(Long bucket, long count, long priceCount, Double priceSum, Double minPrice, Double maxPrice,
+                      long sizeCount, Double sizeSum, Double minSize, Double maxSize,
+                      long pricePerM2Count, Double pricePerM2Sum) {
+        this.count += count;
+        price.merge(priceCount, priceSum, minPrice, maxPrice);
+        size.merge(sizeCount, sizeSum, minSize, maxSize);
+        pricePerM2.merge(pricePerM2Count, pricePerM2Sum, null, null);
+        if (bucket != null) {
+            priceBuckets.merge(bucket, priceCount, Long::sum);
+        }
+    }
+
+    /**
+     * True when a min or max was removed and they must be recomputed with resetRange and addRange
+     */
+    public boolean isStale() {
+        return price.stale || size.stale;
+    }
+
+    public void resetRange() {
+        price.resetRange();
+        size.resetRange();
+    }
+
+    /**
+     * Accounts for one property in the min and max only
+     */
+    public void addRange(Double price, Double size) {
+        this.price.addRange(price);
+        this.size.addRange(size);
+    }
+
+    public double getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * The bucket of a price, the same FLOOR(price / width) the database groups by
+     */
+    public long bucket(double price) {
+        return (long) Math.floor(price / bucketWidth);
+    }
+
+    public PropertyStatsDTO toDTO() {
+        List<PropertyStatsDTO.PriceBucket> buckets = new ArrayList<>(priceBuckets.size());
+        for (Map.Entry<Long, Long> bucket : priceBuckets.entrySet()) {
+            buckets.add(new PropertyStatsDTO.PriceBucket(bucket.getKey() * bucketWidth,
+                    (bucket.getKey() + 1) * bucketWidth, bucket.getValue()));
+        }
+        return new PropertyStatsDTO(count, price.min(), price.max(), price.avg(), size.min(), size.max(), size.avg(),
+                pricePerM2.avg(), bucketWidth, buckets);
+    }
+
+    private static Double pricePerM2(Double price, Double size) {
+        return price == null || size == null || size <= 0 ? null : price / size;
+    }
+
+    /**
+     * Aggregates of one nullable column, nulls are not counted like in SQL
+     */
+    private static final class Column {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private boolean stale;
+
+        void add(Double value) {
+            if (value == null) {
+                return;
+            }
+            count++;
+            sum += value;
+            addRange(value);
+        }
+
+        void remove(Double value) {
+            if (value == null) {
+                return;
+            }
+            count--;
+            sum = count == 0 ? 0 : sum - value;
+            if (count > 0 && (value <= min || value >= max)) {
+                stale = true;
+            } else if (count == 0) {
+                resetRange();
+            }
+        }
+
+        void merge(long count, Double sum, Double min, Double max) {
+            this.count += count;
+            this.sum += sum == null ? 0 : sum;
+            addRange(min);
+            addRange(max);
+        }
+
+        void addRange(Double value) {
+            if (value == null) {
+                return;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void resetRange() {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            stale = false;
+        }
+
+        Double min() {
+            return count == 0 ? null : min;
+        }
+
+        Double max() {
+            return count == 0 ? null : max;
+        }
+
+        Double avg() {
+            return count == 0 ? null : sum / count;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package edu.eci.arep.taller5.model;
+
+/**
+ * Projection with the columns needed to aggregate the statistics of a property
+ */
+public interface PropertyValues {
+    Long getId();
+    Double getPrice();
+    Double getSize();
+}
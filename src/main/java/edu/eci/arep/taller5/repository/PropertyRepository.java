@@ -1,26 +1,149 @@
 package edu.eci.arep.taller5.repository;
 
+import edu.eci.arep.taller5.config.CacheConfig;
 import edu.eci.arep.taller5.model.Property;
-import org.springframework.data.domain.Page;
+import edu.eci.arep.taller5.model.PropertyAddress;
+import edu.eci.arep.taller5.model.PropertyColumns;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.model.PropertyValues;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 
 @Repository
-public interface PropertyRepository extends JpaRepository<Property, Long>, JpaSpecificationExecutor<Property> {
+public interface PropertyRepository extends JpaRepository<Property, Long>, JpaSpecificationExecutor<Property>,
+        PropertySummaryRepository, PropertyStatsRepository, PropertyStreamRepository {
+    /**
+     * Page of the properties matching the filter, without counting them
+     * @param ids the address index candidates, null when the index was not used
+     */
+    default Slice<Property> findSliceByFilter(PropertyFilter filter, Collection<Long> ids, Pageable pageable) {
+        return findBy(PropertySpecifications.matching(filter, ids), query -> query.slice(pageable));
+    }
+
+    /**
+     * Total elements of findSliceByFilter, cached by the filter. The ids come from the location
+     * so they do not need to be part of the key
+     */
+    @Cacheable(cacheNames = CacheConfig.PROPERTY_COUNTS, key = CacheConfig.FILTER_KEY,
+            unless = CacheConfig.UNLESS_MISSING_WRITES)
+    default long countByFilter(PropertyFilter filter, Collection<Long> ids) {
+        return count(PropertySpecifications.matching(filter, ids));
+    }
+
+    /**
+     * Single-statement update of the values of a property, the version is increased in the same statement
+     * @param values the new values, with the derived columns already refreshed (Property.touch)
+     * @param version the expected version, null to update any version
+     * @return the updated rows, 0 when the id does not exist or is not at the expected version
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
     @Query(
             """
-            SELECT p FROM Property p
-            WHERE (:location IS NULL OR LOWER(p.address) LIKE LOWER(CONCAT('%',:location,'%')))
-            AND (:price IS NULL OR p.price >= :price)
-            AND (:sizeProperty IS NULL OR p.size >= :sizeProperty)
+            UPDATE Property p
+            SET p.address = :#{#values.address}, p.addressLower = :#{#values.addressLower},
+                p.price = :#{#values.price}, p.size = :#{#values.size}, p.pricePerM2 = :#{#values.pricePerM2},
+                p.description = :#{#values.description}, p.updatedAt = :#{#values.updatedAt},
+                p.version = p.version + 1
+            WHERE p.id = :id AND (:version IS NULL OR p.version = :version)
             """
     )
-    Page<Property> findAllByFilter(@Param("location") String location, @Param("price") Double price,
-                                          @Param("sizeProperty") Double sizeProperty,Pageable pageable);
+    int updateById(@Param("id") Long id, @Param("values") Property values, @Param("version") Long version);
+
+    /**
+     * updateById of any version and the version it left, read in the same transaction while the
+     * updated row is still locked, so it is the version of these values and not of a later write
+     * @return the new version, empty when the id does not exist
+     */
+    @Transactional
+    default Optional<Long> updateAndGetVersion(Long id, Property values) {
+        return updateById(id, values, null) == 0 ? Optional.empty() : findVersionById(id);
+    }
+
+    /**
+     * Single-statement delete
+     * @param version the expected version, null to delete any version
+     * @return the deleted rows, 0 when the id does not exist or is not at the expected version
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Property p WHERE p.id = :id AND (:version IS NULL OR p.version = :version)")
+    int deleteByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
+
+    /**
+     * The ids of the list that exist
+     */
+    @Query("SELECT p.id FROM Property p WHERE p.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Current version of a property. Declared queries get no read-only transaction, so with read
+     * replicas it is answered by the primary and sees the writes that just committed
+     */
+    @Query("SELECT p.version FROM Property p WHERE p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Id, address and modification time of the properties after the given id, used to build the address
+     * index in batches
+     */
+    @Query("SELECT p.id AS id, p.address AS address, p.updatedAt AS updatedAt FROM Property p WHERE p.id > :afterId ORDER BY p.id")
+    List<PropertyAddress> findAddressesAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Id, price and size of the properties after the given id, used to build the statistics in batches
+     */
+    @Query("SELECT p.id AS id, p.price AS price, p.size AS size FROM Property p WHERE p.id > :afterId ORDER BY p.id")
+    List<PropertyValues> findValuesAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Id, address, price and size of the properties after the given id, used to build the column snapshot in batches
+     */
+    @Query(
+            """
+            SELECT p.id AS id, p.address AS address, p.price AS price, p.size AS size
+            FROM Property p WHERE p.id > :afterId ORDER BY p.id
+            """
+    )
+    List<PropertyColumns> findColumnsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /*
+     * Keyset queries: seek past the (sortKey, id) of the last row instead of using OFFSET,
+     * so every page costs the same as the first one. The filters are the listing predicates
+     * of PropertySpecifications, ids are the address index candidates or null
+     */
+    default List<Property> findNextById(PropertyFilter filter, Collection<Long> ids, Long afterId, Limit limit) {
+        return findBy(PropertySpecifications.matching(filter, ids).and(PropertySpecifications.idAfter(afterId)),
+                query -> query.sortBy(Sort.by("id")).limit(limit.max()).all());
+    }
+
+    default List<Property> findNextByPrice(PropertyFilter filter, Collection<Long> ids, Double afterValue,
+                                           Long afterId, Limit limit) {
+        return findBy(PropertySpecifications.matching(filter, ids)
+                        .and(PropertySpecifications.after("price", afterValue, afterId)),
+                query -> query.sortBy(Sort.by("price", "id")).limit(limit.max()).all());
+    }
+
+    default List<Property> findNextBySize(PropertyFilter filter, Collection<Long> ids, Double afterValue,
+                                          Long afterId, Limit limit) {
+        return findBy(PropertySpecifications.matching(filter, ids)
+                        .and(PropertySpecifications.after("size", afterValue, afterId)),
+                query -> query.sortBy(Sort.by("size", "id")).limit(limit.max()).all());
+    }
 
 }
@@ -0,0 +1,70 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Listing predicates, only the filters that were given end up in the WHERE clause so every
+ * combination gets its own plan and the range filters can use the (column, id) indexes
+ */
+public final class PropertySpecifications {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private PropertySpecifications() {
+    }
+
+    /**
+     * All the filters that are set, plus the ids of the address index when there are any
+     * @param ids the address index candidates, null when the index was not used
+     */
+    public static Specification<Property> matching(PropertyFilter filter, Collection<Long> ids) {
+        List<Specification<Property>> specs = new ArrayList<>();
+        if (ids != null) specs.add(idIn(ids));
+        if (filter.location() != null) specs.add(addressContains(filter.location()));
+        if (filter.price() != null) specs.add(atLeast("price", filter.price()));
+        if (filter.maxPrice() != null) specs.add(atMost("price", filter.maxPrice()));
+        if (filter.sizeProperty() != null) specs.add(atLeast("size", filter.sizeProperty()));
+        if (filter.maxSize() != null) specs.add(atMost("size", filter.maxSize()));
+        if (filter.minPricePerM2() != null) specs.add(atLeast("pricePerM2", filter.minPricePerM2()));
+        if (filter.maxPricePerM2() != null) specs.add(atMost("pricePerM2", filter.maxPricePerM2()));
+        return Specification.allOf(specs);
+    }
+
+    public static Specification<Property> idIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    /**
+     * The lower-cased address contains the already lower-cased text, % and _ are matched literally
+     */
+    public static Specification<Property> addressContains(String location) {
+        String pattern = "%" + location.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(root.get("addressLower"), pattern, LIKE_ESCAPE);
+    }
+
+    public static Specification<Property> idAfter(Long afterId) {
+        return (root, query, cb) -> cb.greaterThan(root.get("id"), afterId);
+    }
+
+    /**
+     * Rows after (value, id) in (attribute, id) order. The leading attribute >= value keeps the
+     * seek on the (attribute, id) index, the OR only breaks the ties
+     */
+    public static Specification<Property> after(String attribute, Double value, Long afterId) {
+        return (root, query, cb) -> cb.and(cb.greaterThanOrEqualTo(root.get(attribute), value),
+                cb.or(cb.greaterThan(root.get(attribute), value), cb.greaterThan(root.get("id"), afterId)));
+    }
+
+    public static Specification<Property> atLeast(String attribute, Double value) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get(attribute), value);
+    }
+
+    public static Specification<Property> atMost(String attribute, Double value) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get(attribute), value);
+    }
+}
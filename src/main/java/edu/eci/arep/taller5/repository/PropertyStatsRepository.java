@@ -0,0 +1,18 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.model.PropertyStats;
+
+import java.util.Collection;
+
+/**
+ * Statistics of the filtered properties aggregated by the database with the criteria of PropertySpecifications
+ */
+public interface PropertyStatsRepository {
+    /**
+     * One GROUP BY query by price bucket, merged into the totals
+     * @param ids the address index candidates, null when the index was not used
+     * @param bucketWidth the width of the price buckets
+     */
+    PropertyStats findStatsByFilter(PropertyFilter filter, Collection<Long> ids, double bucketWidth);
+}
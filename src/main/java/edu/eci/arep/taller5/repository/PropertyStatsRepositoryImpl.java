@@ -0,0 +1,56 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.model.PropertyStats;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * Builds the aggregate query of the statistics, only one row per price bucket is sent back
+ * instead of the matching properties
+ */
+class PropertyStatsRepositoryImpl implements PropertyStatsRepository {
+    private final EntityManager entityManager;
+
+    PropertyStatsRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PropertyStats findStatsByFilter(PropertyFilter filter, Collection<Long> ids, double bucketWidth) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Property> root = query.from(Property.class);
+        Expression<Double> price = root.get("price");
+        Expression<Double> size = root.get("size");
+        Expression<Double> pricePerM2 = root.get("pricePerM2");
+        // The width is a literal so the select and the GROUP BY are the same expression
+        Expression<Number> bucket = cb.floor(cb.quot(price, cb.literal(bucketWidth)));
+        query.multiselect(bucket, cb.count(root), cb.count(price), cb.sum(price), cb.min(price), cb.max(price),
+                cb.count(size), cb.sum(size), cb.min(size), cb.max(size), cb.count(pricePerM2), cb.sum(pricePerM2));
+        Predicate where = PropertySpecifications.matching(filter, ids).toPredicate(root, query, cb);
+        if (where != null) {
+            query.where(where);
+        }
+        query.groupBy(bucket);
+        PropertyStats stats = new PropertyStats(bucketWidth);
+        for (Tuple row : entityManager.createQuery(query).getResultList()) {
+            Number priceBucket = row.get(0, Number.class);
+            stats.merge(priceBucket == null ? null : priceBucket.longValue(), row.get(1, Long.class), row.get(2, Long.class),
+                    row.get(3, Double.class), row.get(4, Double.class), row.get(5, Double.class),
+                    row.get(6, Long.class), row.get(7, Double.class), row.get(8, Double.class),
+                    row.get(9, Double.class), row.get(10, Long.class), row.get(11, Double.class));
+        }
+        return stats;
+    }
+}
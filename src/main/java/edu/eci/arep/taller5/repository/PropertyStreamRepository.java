@@ -0,0 +1,22 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Forward-only reads of the whole filtered catalog with the criteria of PropertySpecifications
+ */
+public interface PropertyStreamRepository {
+    int EXPORT_FETCH_SIZE = 1000;
+
+    /**
+     * Cursor over the properties matching the filter in id order, rows are fetched from the
+     * database in blocks of EXPORT_FETCH_SIZE and loaded read-only (no dirty-checking snapshots).
+     * Must be consumed inside a transaction and closed
+     * @param ids the address index candidates, null when the index was not used
+     */
+    Stream<Property> streamByFilter(PropertyFilter filter, Collection<Long> ids);
+}
@@ -0,0 +1,20 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+
+/**
+ * Listing rows read column by column with the criteria of PropertySpecifications
+ */
+public interface PropertySummaryRepository {
+    /**
+     * @param ids the address index candidates, null when the index was not used
+     * @param descriptionLength the max characters of each description
+     */
+    Slice<PropertySummaryDTO> findSummariesByFilter(PropertyFilter filter, Collection<Long> ids,
+                                                    int descriptionLength, Pageable pageable);
+}
@@ -0,0 +1,55 @@
+package edu.eci.arep.taller5.repository;
+
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds the constructor expression query of the listing rows, the page is read with one extra
+ * row to know if there is a next one instead of counting
+ */
+class PropertySummaryRepositoryImpl implements PropertySummaryRepository {
+    private final EntityManager entityManager;
+
+    PropertySummaryRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Slice<PropertySummaryDTO> findSummariesByFilter(PropertyFilter filter, Collection<Long> ids,
+                                                           int descriptionLength, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PropertySummaryDTO> query = cb.createQuery(PropertySummaryDTO.class);
+        Root<Property> root = query.from(Property.class);
+        query.select(cb.construct(PropertySummaryDTO.class, root.get("id"), root.get("address"),
+                root.get("price"), root.get("size"),
+                cb.substring(root.get("description"), cb.literal(1), cb.parameter(Integer.class, "descriptionLength"))));
+        Predicate where = PropertySpecifications.matching(filter, ids).toPredicate(root, query, cb);
+        if (where != null) {
+            query.where(where);
+        }
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        TypedQuery<PropertySummaryDTO> typed = entityManager.createQuery(query)
+                .setParameter("descriptionLength", descriptionLength);
+        if (pageable.isPaged()) {
+            typed.setFirstResult((int) pageable.getOffset());
+            typed.setMaxResults(pageable.getPageSize() + 1);
+        }
+        List<PropertySummaryDTO> rows = typed.getResultList();
+        boolean hasNext = pageable.isPaged() && rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+}
@@ -0,0 +1,618 @@
+package edu.eci.arep.taller5.service.Imp;
+
+import edu.eci.arep.taller5.config.CacheConfig;
+import edu.eci.arep.taller5.exception.AppException;
+import edu.eci.arep.taller5.exception.BadRequestException;
+import edu.eci.arep.taller5.exception.NotFoundException;
+import edu.eci.arep.taller5.exception.PreconditionFailedException;
+import edu.eci.arep.taller5.exception.ValidationException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import edu.eci.arep.taller5.model.DTO.BatchItemResultDTO;
+import edu.eci.arep.taller5.model.DTO.ImportReportDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static edu.eci.arep.taller5.mapper.PropertyMapper.toProperty;
+
+/**
+ * Writes lists of properties: every item is validated up front and the valid ones are
+ * written in chunks, one transaction per chunk, so Hibernate sends them as JDBC batches.
+ * When a chunk fails its items are written again one by one, so only the items that fail
+ * by themselves get an error
+ */
+@Service
+public class PropertyBatchServiceImp implements PropertyBatchService {
+    private static final Logger log = LoggerFactory.getLogger(PropertyBatchServiceImp.class);
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+    /**
+     * The writes through the EntityManager are not translated by a repository proxy
+     */
+    private static final HibernateJpaDialect JPA_DIALECT = new HibernateJpaDialect();
+
+    private final PropertyRepository propertyRepository;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+    private final int maxItems;
+    private final int maxRejectedDetails;
+    private final ObjectReader propertyReader;
+    private final ObjectWriter reportWriter;
+    private final Cache propertyCounts;
+
+    @Autowired
+    public PropertyBatchServiceImp(PropertyRepository propertyRepository, Validator validator,
+                                   PlatformTransactionManager transactionManager, EntityManager entityManager,
+                                   ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                                   CacheManager cacheManager,
+                                   @Value("${app.batch.chunk-size:500}") int chunkSize,
+                                   @Value("${app.batch.max-items:10000}") int maxItems,
+                                   @Value("${app.import.max-rejected-details:100}") int maxRejectedDetails) {
+        this.propertyRepository = propertyRepository;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.maxItems = maxItems;
+        this.maxRejectedDetails = maxRejectedDetails;
+        this.propertyReader = objectMapper.readerFor(PropertyDTO.class);
+        this.reportWriter = objectMapper.writerFor(ImportReportDTO.class);
+        this.propertyCounts = cacheManager.getCache(CacheConfig.PROPERTY_COUNTS);
+    }
+
+    /**
+     * Save new properties
+     * @param properties the new properties, none of them can have an id
+     * @throws BadRequestException When the list is empty or too large
+     * @return one result per property, 201 with the new id or the error
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public List<BatchItemResultDTO> createAll(List<PropertyDTO> properties) {
+        checkSize(properties);
+        BatchItemResultDTO[] results = new BatchItemResultDTO[properties.size()];
+        List<Item> valid = new ArrayList<>();
+        for (int i = 0; i < properties.size(); i++) {
+            PropertyDTO dto = properties.get(i);
+            try {
+                validate(dto);
+                if (dto.getId() != null) {
+                    throw new BadRequestException("Cannot create property with id " + dto.getId());
+                }
+                valid.add(new Item(i, toProperty(dto)));
+            } catch (AppException e) {
+                results[i] = BatchItemResultDTO.failure(i, dto == null ? null : dto.getId(), e.toProblemDetail());
+            }
+        }
+        for (List<Item> chunk : chunks(valid)) {
+            writeChunk(chunk, this::persistItems, (item, e) ->
+                    results[item.index()] = BatchItemResultDTO.failure(item.index(), null, e.toProblemDetail()));
+            for (Item item : chunk) {
+                if (results[item.index()] == null) {
+                    results[item.index()] = BatchItemResultDTO.success(item.index(), HttpStatus.CREATED.value(),
+                            item.property().getId());
+                    eventPublisher.publishEvent(PropertyChangedEvent.created(item.property()));
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Update existing properties
+     * @param properties the values of the properties, every one with its id
+     * @throws BadRequestException When the list is empty or too large
+     * @return one result per property, 200 or the error
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public List<BatchItemResultDTO> updateAll(List<PropertyDTO> properties) {
+        checkSize(properties);
+        BatchItemResultDTO[] results = new BatchItemResultDTO[properties.size()];
+        List<Item> valid = validUpdates(properties, results);
+        for (List<Item> chunk : chunks(valid)) {
+            Map<Long, Property> updated = new LinkedHashMap<>();
+            writeChunk(chunk, items -> updated.putAll(transactionTemplate.execute(status -> {
+                Map<Long, Property> managed = new LinkedHashMap<>();
+                propertyRepository.findAllById(items.stream().map(item -> item.property().getId()).toList())
+                        .forEach(p -> managed.put(p.getId(), p));
+                for (Item item : items) {
+                    Property current = managed.get(item.property().getId());
+                    if (current != null) {
+                        current.setAddress(item.property().getAddress());
+                        current.setPrice(item.property().getPrice());
+                        current.setSize(item.property().getSize());
+                        current.setDescription(item.property().getDescription());
+                    }
+                }
+                flushAndClear();
+                return managed;
+            })), (item, e) -> fail(item, results, e));
+            for (Item item : chunk) {
+                Long id = item.property().getId();
+                Property property = updated.get(id);
+                if (results[item.index()] != null) {
+                    continue;
+                }
+                if (property == null) {
+                    results[item.index()] = BatchItemResultDTO.failure(item.index(), id,
+                            new NotFoundException("Property not found with id " + id).toProblemDetail());
+                } else {
+                    results[item.index()] = BatchItemResultDTO.success(item.index(), HttpStatus.OK.value(), id);
+                    eventPublisher.publishEvent(PropertyChangedEvent.updated(property));
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Update existing properties only while they are at the expected version, each one with the
+     * single-statement update of the repository: no entity is loaded, so a concurrent write of
+     * a property only fails its own item
+     * @param properties the values of the properties, every one with its id
+     * @param versions the expected version of each property, null to update any version
+     * @throws BadRequestException When the list is empty or too large
+     * @return one result per property, 200 or the error (412 when it is not at the expected version)
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public List<BatchItemResultDTO> updateAll(List<PropertyDTO> properties, List<Long> versions) {
+        checkSize(properties);
+        BatchItemResultDTO[] results = new BatchItemResultDTO[properties.size()];
+        List<Item> valid = validUpdates(properties, results);
+        for (List<Item> chunk : chunks(valid)) {
+            Set<Long> written = new HashSet<>();
+            writeChunk(chunk, items -> written.addAll(transactionTemplate.execute(status -> {
+                Set<Long> ids = new HashSet<>();
+                for (Item item : items) {
+                    Property property = item.property();
+                    property.touch();
+                    if (propertyRepository.updateById(property.getId(), property, versions.get(item.index())) == 1) {
+                        ids.add(property.getId());
+                    }
+                }
+                return ids;
+            })), (item, e) -> fail(item, results, e));
+            for (Item item : chunk) {
+                Property property = item.property();
+                Long id = property.getId();
+                Long version = versions.get(item.index());
+                if (results[item.index()] != null) {
+                    continue;
+                }
+                if (written.contains(id)) {
+                    property.setVersion(version == null ? null : version + 1);
+                    results[item.index()] = BatchItemResultDTO.success(item.index(), HttpStatus.OK.value(), id);
+                    eventPublisher.publishEvent(PropertyChangedEvent.updated(property));
+                } else {
+                    AppException error = version != null && propertyRepository.findVersionById(id).isPresent()
+                            ? new PreconditionFailedException("The property " + id + " is not at version " + version)
+                            : new NotFoundException("Property not found with id " + id);
+                    results[item.index()] = BatchItemResultDTO.failure(item.index(), id, error.toProblemDetail());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Delete existing properties, each chunk with a single DELETE statement
+     * @param ids the property IDs to delete
+     * @throws BadRequestException When the list is empty or too large
+     * @return one result per id, 204 or the error
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public List<BatchItemResultDTO> deleteAll(List<Long> ids) {
+        checkSize(ids);
+        BatchItemResultDTO[] results = new BatchItemResultDTO[ids.size()];
+        List<Integer> valid = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (id == null || !seen.add(id)) {
+                String message = id == null ? "The id property is required" : "Duplicated property id " + id;
+                results[i] = BatchItemResultDTO.failure(i, id, new BadRequestException(message).toProblemDetail());
+            } else {
+                valid.add(i);
+            }
+        }
+        for (List<Integer> chunk : chunks(valid)) {
+            Set<Long> deleted = new HashSet<>();
+            writeChunk(chunk, indexes -> deleted.addAll(transactionTemplate.execute(status -> {
+                List<Long> existing = propertyRepository.findExistingIds(indexes.stream().map(ids::get).toList());
+                propertyRepository.deleteAllByIdInBatch(existing);
+                return existing;
+            })), (index, e) -> results[index] = BatchItemResultDTO.failure(index, ids.get(index), e.toProblemDetail()));
+            for (int index : chunk) {
+                Long id = ids.get(index);
+                if (results[index] != null) {
+                    continue;
+                }
+                if (deleted.contains(id)) {
+                    results[index] = BatchItemResultDTO.success(index, HttpStatus.NO_CONTENT.value(), id);
+                    eventPublisher.publishEvent(PropertyChangedEvent.deleted(id));
+                } else {
+                    results[index] = BatchItemResultDTO.failure(index, id,
+                            new NotFoundException("Property not found with id " + id).toProblemDetail());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Imports a feed of new properties reading it line by line, only one chunk of
+     * properties is held in memory at a time whatever the size of the feed
+     * @param input the request body
+     * @param format application/x-ndjson (one PropertyDTO per line) or text/csv (with a header line)
+     * @throws BadRequestException When the format is not supported or the CSV header is missing
+     * @return how many lines were imported and rejected, and the throughput
+     */
+    public ImportReportDTO importProperties(InputStream input, String format) throws IOException {
+        return importProperties(input, format, progress -> { });
+    }
+
+    /**
+     * Imports like importProperties and writes the progress to the client as NDJSON: a line after each
+     * chunk (lines read, imported, rejected, throughput) and the report with the rejected lines as the last one
+     * @param progress the response body, flushed after each line
+     */
+    public void importProperties(InputStream input, String format, OutputStream progress) throws IOException {
+        ImportReportDTO report = importProperties(input, format, chunk -> {
+            try {
+                writeLine(progress, chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writeLine(progress, report);
+    }
+
+    private void writeLine(OutputStream out, ImportReportDTO report) throws IOException {
+        out.write(reportWriter.writeValueAsBytes(report));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Each chunk evicts the cached counts once committed, so an import that stops half way (a read
+     * error or an invalid CSV header) never leaves them stale. The imported ids are new, no cached
+     * property can be stale
+     * @param progress receives the totals after each chunk
+     */
+    private ImportReportDTO importProperties(InputStream input, String format, Consumer<ImportReportDTO> progress)
+            throws IOException {
+        String mediaType = format == null ? "" : format.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        if (!mediaType.equals(NDJSON) && !mediaType.equals(CSV)) {
+            throw new BadRequestException("Cannot import format " + format);
+        }
+        long start = System.currentTimeMillis();
+        long lines = 0;
+        long imported = 0;
+        long rejected = 0;
+        List<ImportReportDTO.RejectedLine> rejectedLines = new ArrayList<>();
+        List<Item> chunk = new ArrayList<>(chunkSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<String> header = null;
+        if (mediaType.equals(CSV)) {
+            String first = reader.readLine();
+            if (first == null) {
+                throw new BadRequestException("The CSV header is required");
+            }
+            lines++;
+            header = parseCsvLine(first).stream().map(h -> h.trim().toLowerCase(Locale.ROOT)).toList();
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                PropertyDTO dto = header == null ? readJson(line) : readCsv(header, line);
+                validate(dto);
+                if (dto.getId() != null) {
+                    throw new BadRequestException("Cannot create property with id " + dto.getId());
+                }
+                chunk.add(new Item((int) lines, toProperty(dto)));
+            } catch (AppException e) {
+                rejected++;
+                reject(rejectedLines, lines, e);
+            }
+            if (chunk.size() == chunkSize) {
+                long written = writeImportChunk(chunk, rejectedLines);
+                imported += written;
+                rejected += chunk.size() - written;
+                chunk = new ArrayList<>(chunkSize);
+                ImportReportDTO current = new ImportReportDTO(lines, imported, rejected, System.currentTimeMillis() - start, null);
+                log.info("Import progress: {} lines read, {} imported, {} rejected, {} rows/s", lines, imported,
+                        rejected, String.format(Locale.ROOT, "%.1f", current.getRowsPerSecond()));
+                progress.accept(current);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            long written = writeImportChunk(chunk, rejectedLines);
+            imported += written;
+            rejected += chunk.size() - written;
+        }
+        ImportReportDTO report = new ImportReportDTO(lines, imported, rejected, System.currentTimeMillis() - start, rejectedLines);
+        log.info("Import finished: {} lines, {} imported, {} rejected in {} ms", lines, imported, rejected, report.getElapsedMillis());
+        return report;
+    }
+
+    /**
+     * @return how many properties of the chunk were written
+     */
+    private long writeImportChunk(List<Item> chunk, List<ImportReportDTO.RejectedLine> rejectedLines) {
+        Set<Integer> failed = new HashSet<>();
+        writeChunk(chunk, this::persistItems, (item, e) -> {
+            failed.add(item.index());
+            reject(rejectedLines, item.index(), e);
+        });
+        for (Item item : chunk) {
+            if (!failed.contains(item.index())) {
+                eventPublisher.publishEvent(PropertyChangedEvent.created(item.property()));
+            }
+        }
+        if (failed.size() < chunk.size()) {
+            propertyCounts.clear();
+        }
+        return chunk.size() - failed.size();
+    }
+
+    private void reject(List<ImportReportDTO.RejectedLine> rejectedLines, long line, AppException e) {
+        if (rejectedLines.size() < maxRejectedDetails) {
+            List<Map<String, Object>> errors = e instanceof ValidationException v ? v.getErrors() : null;
+            rejectedLines.add(new ImportReportDTO.RejectedLine(line, e.getMessage(), errors));
+        }
+    }
+
+    private PropertyDTO readJson(String line) {
+        try {
+            return propertyReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private PropertyDTO readCsv(List<String> header, String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.size()) {
+            throw new BadRequestException("Expected " + header.size() + " columns but found " + values.size());
+        }
+        PropertyDTO dto = new PropertyDTO();
+        try {
+            for (int i = 0; i < header.size(); i++) {
+                String value = values.get(i).isEmpty() ? null : values.get(i);
+                switch (header.get(i)) {
+                    case "id" -> dto.setId(value == null ? null : Long.valueOf(value.trim()));
+                    case "address" -> dto.setAddress(value);
+                    case "price" -> dto.setPrice(value == null ? null : Double.valueOf(value.trim()));
+                    case "size" -> dto.setSize(value == null ? null : Double.valueOf(value.trim()));
+                    case "description" -> dto.setDescription(value);
+                    default -> { }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Malformed number: " + e.getMessage());
+        }
+        return dto;
+    }
+
+    /**
+     * Splits a CSV line, fields can be quoted with double quotes ("" is an escaped quote)
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    /**
+     * Inserts the properties of the items, a retry after a rollback inserts them again as new
+     */
+    private void persistItems(List<Item> items) {
+        items.forEach(item -> {
+            item.property().setId(null);
+            item.property().setVersion(null);
+        });
+        persist(items.stream().map(Item::property).toList());
+    }
+
+    /**
+     * Inserts the properties in one transaction, the persistence context is cleared after
+     * the flush so the entities of previous chunks are not kept in memory
+     */
+    private void persist(List<Property> properties) {
+        transactionTemplate.executeWithoutResult(status -> {
+            properties.forEach(entityManager::persist);
+            flushAndClear();
+        });
+    }
+
+    /**
+     * Bean validation of the DTO, the same constraints checked on the single-item endpoints
+     * @throws ValidationException When a constraint is violated
+     */
+    private void validate(PropertyDTO dto) {
+        if (dto == null) {
+            throw new BadRequestException("The property is required");
+        }
+        Set<ConstraintViolation<PropertyDTO>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            List<Map<String, Object>> errors = violations.stream()
+                    .map(v -> {
+                        Map<String, Object> error = new LinkedHashMap<>();
+                        error.put("field", v.getPropertyPath().toString());
+                        error.put("message", v.getMessage());
+                        error.put("rejectedValue", v.getInvalidValue());
+                        return error;
+                    })
+                    .toList();
+            throw new ValidationException(errors);
+        }
+    }
+
+    /**
+     * The items of an update that pass the validation, the others get their error in results
+     */
+    private List<Item> validUpdates(List<PropertyDTO> properties, BatchItemResultDTO[] results) {
+        List<Item> valid = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < properties.size(); i++) {
+            PropertyDTO dto = properties.get(i);
+            try {
+                validate(dto);
+                if (dto.getId() == null) {
+                    throw new BadRequestException("The id property is required");
+                }
+                if (!seen.add(dto.getId())) {
+                    throw new BadRequestException("Duplicated property id " + dto.getId());
+                }
+                valid.add(new Item(i, toProperty(dto)));
+            } catch (AppException e) {
+                results[i] = BatchItemResultDTO.failure(i, dto == null ? null : dto.getId(), e.toProblemDetail());
+            }
+        }
+        return valid;
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void checkSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new BadRequestException("The batch is empty");
+        }
+        if (items.size() > maxItems) {
+            throw new BadRequestException("The batch cannot have more than " + maxItems + " items");
+        }
+    }
+
+    private <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            chunks.add(items.subList(from, Math.min(from + chunkSize, items.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes a chunk in one transaction. When it fails every item is written again in its own
+     * transaction and failed gets the ones that still fail, mapped as ErrorHandler maps them
+     */
+    private <T> void writeChunk(List<T> chunk, Consumer<List<T>> write, BiConsumer<T, AppException> failed) {
+        try {
+            write.accept(chunk);
+            return;
+        } catch (RuntimeException e) {
+            if (chunk.size() == 1) {
+                log.warn("Batch item failed", e);
+                failed.accept(chunk.get(0), toAppException(e));
+                return;
+            }
+            log.warn("Chunk of {} items failed, writing them one by one", chunk.size(), e);
+        }
+        for (T item : chunk) {
+            try {
+                write.accept(List.of(item));
+            } catch (RuntimeException e) {
+                log.warn("Batch item failed", e);
+                failed.accept(item, toAppException(e));
+            }
+        }
+    }
+
+    private static AppException toAppException(RuntimeException e) {
+        DataAccessException translated = JPA_DIALECT.translateExceptionIfPossible(e);
+        return AppException.from(translated == null ? e : translated);
+    }
+
+    private void fail(Item item, BatchItemResultDTO[] results, AppException e) {
+        results[item.index()] = BatchItemResultDTO.failure(item.index(), item.property().getId(), e.toProblemDetail());
+    }
+
+    /**
+     * A valid item of the batch and its position in the request (or its line number in an import)
+     */
+    private record Item(int index, Property property) {}
+}
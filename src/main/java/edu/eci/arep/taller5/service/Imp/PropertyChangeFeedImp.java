@@ -0,0 +1,232 @@
+package edu.eci.arep.taller5.service.Imp;
+
+import edu.eci.arep.taller5.exception.ServiceUnavailableException;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.service.PropertyChangeFeed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-Sent Events feed of the committed property changes.
+ * The last changes are kept in a ring buffer numbered by a sequence, the event id is epoch-sequence so a
+ * client that reconnects with Last-Event-ID gets what it missed. When what it missed is no longer in the
+ * ring, or the id is from another instance or start, it gets a reset event (reload the listing) and
+ * continues from the newest change.
+ * Writers only append to the ring and wake the subscribers: each subscriber sends from its own cursor on a
+ * virtual thread, a slow one only delays itself and is moved to the newest change with a reset when the
+ * ring overtakes it. Idle subscribers hold no thread, only their async request and a heartbeat comment
+ */
+@Service
+public class PropertyChangeFeedImp implements PropertyChangeFeed {
+    public static final String CHANGE_EVENT = "property";
+    public static final String RESET_EVENT = "reset";
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final PropertyChangedEvent[] ring;
+    private long sequence;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Counter dropped;
+
+    @Autowired
+    public PropertyChangeFeedImp(@Value("${app.change-feed.buffer-size:1024}") int bufferSize,
+                                 @Value("${app.change-feed.max-subscribers:5000}") int maxSubscribers,
+                                 @Value("${app.change-feed.timeout:30m}") Duration timeout,
+                                 @Value("${app.change-feed.heartbeat:30s}") Duration heartbeat,
+                                 MeterRegistry meterRegistry) {
+        this.ring = new PropertyChangedEvent[bufferSize];
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+        this.dropped = Counter.builder("property.changes.dropped")
+                .description("Changes skipped for subscribers that fell behind the ring buffer")
+                .register(meterRegistry);
+        Gauge.builder("property.changes.subscribers", subscribers, Set::size)
+                .description("Open subscriptions of the change feed")
+                .register(meterRegistry);
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "property-changes-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param lastEventId the id of the last event the client received, null to only get new changes
+     * @throws ServiceUnavailableException when the feed has max-subscribers already
+     */
+    @Override
+    public SseEmitter subscribe(String lastEventId) {
+        if(subscribers.size() >= maxSubscribers){
+            throw new ServiceUnavailableException("Too many subscribers of the change feed, retry later", Duration.ofSeconds(5));
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, cursor(lastEventId));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        subscriber.wake();
+        return emitter;
+    }
+
+    @Override
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * After the commit, so subscribers never see a change that is rolled back
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        synchronized (ring) {
+            sequence++;
+            ring[(int) (sequence % ring.length)] = event;
+        }
+        subscribers.forEach(Subscriber::wake);
+    }
+
+    /**
+     * @return the sequence the subscriber already has, -1 when it has to reset
+     */
+    private long cursor(String lastEventId) {
+        long newest = newest();
+        if(lastEventId == null || lastEventId.isBlank()){
+            return newest;
+        }
+        int dash = lastEventId.lastIndexOf('-');
+        if(dash < 0 || !lastEventId.substring(0, dash).equals(epoch)){
+            return -1;
+        }
+        try {
+            long last = Long.parseLong(lastEventId.substring(dash + 1));
+            return last < 0 || last > newest ? -1 : last;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private long newest() {
+        synchronized (ring) {
+            return sequence;
+        }
+    }
+
+    /**
+     * The changes after a sequence, null when some of them were already overwritten
+     */
+    private List<PropertyChangedEvent> after(long cursor) {
+        synchronized (ring) {
+            if(sequence - cursor > ring.length){
+                return null;
+            }
+            List<PropertyChangedEvent> changes = new ArrayList<>((int) (sequence - cursor));
+            for (long s = cursor + 1; s <= sequence; s++) {
+                changes.add(ring[(int) (s % ring.length)]);
+            }
+            return changes;
+        }
+    }
+
+    private void heartbeat() {
+        subscribers.forEach(subscriber -> senders.execute(subscriber::ping));
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeats.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long cursor;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Schedules a send unless one is already scheduled, it will see the new changes too
+         */
+        void wake() {
+            if(scheduled.compareAndSet(false, true)){
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                if(cursor < 0){
+                    reset();
+                }
+                List<PropertyChangedEvent> changes = after(cursor);
+                if(changes == null){
+                    dropped.increment(newest() - cursor);
+                    reset();
+                    changes = after(cursor);
+                }
+                long sent = cursor;
+                for (PropertyChangedEvent change : changes == null ? List.<PropertyChangedEvent>of() : changes) {
+                    sent++;
+                    emitter.send(SseEmitter.event().id(epoch + "-" + sent).name(CHANGE_EVENT).data(change));
+                }
+                cursor = sent;
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if(cursor < newest()){
+                wake();
+            }
+        }
+
+        /**
+         * Tells the client to reload and moves it to the newest change, the id of the reset
+         * is its new Last-Event-ID
+         */
+        private void reset() throws IOException {
+            long newest = newest();
+            emitter.send(SseEmitter.event().id(epoch + "-" + newest).name(RESET_EVENT).data(newest));
+            cursor = newest;
+        }
+
+        private void ping() {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
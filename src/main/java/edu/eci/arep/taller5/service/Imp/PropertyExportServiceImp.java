@@ -0,0 +1,136 @@
+package edu.eci.arep.taller5.service.Imp;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.eci.arep.taller5.exception.BadRequestException;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.service.PropertyExportService;
+import edu.eci.arep.taller5.service.index.AddressTrigramIndex;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Streams the whole (filtered) catalog, memory stays constant whatever the number of rows
+ */
+@Service
+public class PropertyExportServiceImp implements PropertyExportService {
+    private static final String NDJSON = "ndjson";
+    private static final String CSV = "csv";
+
+    private final PropertyRepository propertyRepository;
+    private final AddressTrigramIndex addressIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public PropertyExportServiceImp(PropertyRepository propertyRepository, AddressTrigramIndex addressIndex,
+                                    EntityManager entityManager, PlatformTransactionManager transactionManager,
+                                    ObjectMapper objectMapper) {
+        this.propertyRepository = propertyRepository;
+        this.addressIndex = addressIndex;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Content type of the export
+     * @param format ndjson or csv
+     * @throws BadRequestException When the format is not supported
+     */
+    public String mediaType(String format) {
+        return switch (format) {
+            case NDJSON -> PropertyBatchServiceImp.NDJSON;
+            case CSV -> PropertyBatchServiceImp.CSV;
+            default -> throw new BadRequestException("Cannot export format " + format);
+        };
+    }
+
+    /**
+     * Writes the properties that match the filters of the listings while they are read from the
+     * database cursor, each entity is detached once written so the persistence context does not grow
+     * @param format ndjson or csv
+     * @param out the response body
+     */
+    public void export(PropertyFilter filter, String format, OutputStream out) throws IOException {
+        mediaType(format);
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        json.setRootValueSeparator(null);
+        if (CSV.equals(format)) {
+            writer.write("id,address,price,size,description\n");
+        }
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                if (ids.isPresent() && ids.get().isEmpty()) {
+                    return;
+                }
+                try (Stream<Property> properties = propertyRepository.streamByFilter(filter, ids.orElse(null))) {
+                    Iterator<Property> it = properties.iterator();
+                    while (it.hasNext()) {
+                        Property property = it.next();
+                        if (NDJSON.equals(format)) {
+                            json.writeObject(property);
+                            json.flush();
+                            writer.write('\n');
+                        } else {
+                            writeCsv(writer, property);
+                        }
+                        entityManager.detach(property);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private void writeCsv(Writer writer, Property property) throws IOException {
+        writer.write(String.valueOf(property.getId()));
+        writer.write(',');
+        writer.write(csvField(property.getAddress()));
+        writer.write(',');
+        writer.write(property.getPrice() == null ? "" : String.valueOf(property.getPrice()));
+        writer.write(',');
+        writer.write(property.getSize() == null ? "" : String.valueOf(property.getSize()));
+        writer.write(',');
+        writer.write(csvField(property.getDescription()));
+        writer.write('\n');
+    }
+
+    /**
+     * Quotes the value when it has a separator, a quote or a line break
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -1,29 +1,82 @@
 package edu.eci.arep.taller5.service.Imp;
 
+import edu.eci.arep.taller5.config.CacheConfig;
+import edu.eci.arep.taller5.config.MetricsConfig;
+import edu.eci.arep.taller5.exception.AppException;
 import edu.eci.arep.taller5.exception.BadRequestException;
 import edu.eci.arep.taller5.exception.NotFoundException;
+import edu.eci.arep.taller5.exception.PreconditionFailedException;
+import edu.eci.arep.taller5.mapper.CursorMapper;
+import edu.eci.arep.taller5.model.DTO.CursorPageDTO;
+import edu.eci.arep.taller5.model.DTO.PageDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
 import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.model.PropertyCursor;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.model.PropertyStats;
 import edu.eci.arep.taller5.repository.PropertyRepository;
 import edu.eci.arep.taller5.service.PropertyService;
+import edu.eci.arep.taller5.service.index.AddressTrigramIndex;
+import edu.eci.arep.taller5.service.snapshot.PropertyColumnSnapshot;
+import edu.eci.arep.taller5.service.stats.PropertyStatsAggregator;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
+@Timed(MetricsConfig.SERVICE_TIMER)
 public class PropertyServiceImp implements PropertyService {
+    private static final int MAX_CURSOR_PAGE_SIZE = 2000;
+    /**
+     * Fields the listings can be sorted by, more than one can be given (sort=price,desc&sort=size)
+     */
+    public static final Set<String> SORT_FIELDS = Set.of("id", "address", "price", "size", "pricePerM2");
+    // SUBSTRING length used when no truncation is asked, start + length must not overflow in the database
+    private static final int FULL_DESCRIPTION_LENGTH = 1_000_000;
 
     private PropertyRepository propertyRepository;
+    private AddressTrigramIndex addressIndex;
+    private ApplicationEventPublisher eventPublisher;
+    private PropertyStatsAggregator statsAggregator;
+    private PropertyColumnSnapshot columnSnapshot;
     @Autowired
-    public PropertyServiceImp(PropertyRepository propertyRepository) {
+    public PropertyServiceImp(PropertyRepository propertyRepository, AddressTrigramIndex addressIndex,
+                              ApplicationEventPublisher eventPublisher, PropertyStatsAggregator statsAggregator,
+                              PropertyColumnSnapshot columnSnapshot) {
         this.propertyRepository = propertyRepository;
+        this.addressIndex = addressIndex;
+        this.eventPublisher = eventPublisher;
+        this.statsAggregator = statsAggregator;
+        this.columnSnapshot = columnSnapshot;
     }
 
     /**
      * Gets all properties
      */
+    @Transactional(readOnly = true)
     public List<Property> getAll() {
         return propertyRepository.findAll();
     }
@@ -33,6 +86,8 @@ public class PropertyServiceImp implements PropertyService {
      * @param id the id to search
      * @throws NotFoundException When the property does not exist
      */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.PROPERTIES, unless = CacheConfig.UNLESS_MISSING_WRITES)
     public Property getById(Long id) {
         Optional<Property> p = propertyRepository.findById(id);
         if(p.isPresent()){
@@ -46,52 +101,252 @@ public class PropertyServiceImp implements PropertyService {
      * @throws BadRequestException When there's a property with an existing id
      * @return the new property
      */
+    @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
     public Property save(Property property) {
         if(property.getId() != null){
             throw new BadRequestException("Cannot create property with id " + property.getId());
         }
-        return propertyRepository.save(property);
+        Property saved = propertyRepository.save(property);
+        eventPublisher.publishEvent(PropertyChangedEvent.created(saved));
+        return saved;
     }
 
     /**
-     * Update an existing property
+     * Update an existing property with a single UPDATE statement, the row is not read before
      * @param id property ID to update
      * @param property property values
+     * @param version the version the client has, null to update any version
      * @throws NotFoundException when the property does not exist
-     * @return the updated property
+     * @throws PreconditionFailedException when the property is not at the given version
+     * @return the updated property with its new version
      */
-    public Property update(Long id, Property property) {
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public Property update(Long id, Property property, Long version) {
         if(property.getId() != null && !property.getId().equals(id)){
             throw new BadRequestException("The id property is not equals to param id");
         }
-        if(propertyRepository.existsById(id)){
-            if(property.getId() == null) property.setId(id);
-            return propertyRepository.save(property);
+        property.setId(id);
+        property.touch();
+        if(version == null){
+            property.setVersion(propertyRepository.updateAndGetVersion(id, property)
+                    .orElseThrow(() -> notWritten(id, null)));
+        } else if(propertyRepository.updateById(id, property, version) == 0){
+            throw notWritten(id, version);
+        } else {
+            property.setVersion(version + 1);
         }
-        throw new NotFoundException("Property not found with id " + id);
-
+        eventPublisher.publishEvent(PropertyChangedEvent.updated(property));
+        return property;
     }
 
     /**
-     * Delete an existing property
+     * Delete an existing property with a single DELETE statement
      * @param id the ID to delete
+     * @param version the version the client has, null to delete any version
+     * @throws NotFoundException when the property does not exist
+     * @throws PreconditionFailedException when the property is not at the given version
      */
-    public void delete(Long id) {
-        if(!propertyRepository.existsById(id)){
-            throw new NotFoundException("Property not found with id " + id);
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PROPERTIES, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PROPERTY_COUNTS, allEntries = true)
+    })
+    public void delete(Long id, Long version) {
+        if(propertyRepository.deleteByIdAndVersion(id, version) == 0){
+            throw notWritten(id, version);
         }
-        propertyRepository.deleteById(id);
+        eventPublisher.publishEvent(PropertyChangedEvent.deleted(id));
+    }
+
+    /**
+     * The error of a write that changed no row, the existence is only checked to tell a
+     * missing property from a stale version. The check is a declared query, so with read
+     * replicas it is answered by the primary and sees the write that changed the version
+     */
+    private AppException notWritten(Long id, Long version){
+        if(version != null && propertyRepository.findVersionById(id).isPresent()){
+            return new PreconditionFailedException("The property " + id + " is not at version " + version);
+        }
+        return new NotFoundException("Property not found with id " + id);
     }
 
     /**
      * Gets the property by filter and pagination
-     * @param location
-     * @param price
-     * @param sizeProperty
-     * @param pageable
-     * @return The Page object with the filtered properties
+     * @param filter the listing filters, only the given ones are part of the query
+     * @param pageable page, size and sort, the sort fields must be in SORT_FIELDS
+     * @throws BadRequestException When a range or the sort are not valid
+     * @return The Page object with the filtered properties, the total elements come from the column snapshot
+     * when it is enabled or else from the count cache
+     */
+    @Transactional(readOnly = true)
+    public Page<Property> getPaginatedProperties(PropertyFilter filter, Pageable pageable){
+        Pageable page = checkListing(filter, pageable);
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        if(ids.isPresent() && ids.get().isEmpty()){
+            return Page.empty(page);
+        }
+        Collection<Long> candidates = ids.orElse(null);
+        Optional<PropertyColumnSnapshot.Scan> scan = columnSnapshot.scan(filter, candidates, page);
+        if(scan.isPresent()){
+            return new PageImpl<>(findAllInOrder(scan.get().ids()), page, scan.get().total());
+        }
+        Slice<Property> slice = propertyRepository.findSliceByFilter(filter, candidates, page);
+        return PageableExecutionUtils.getPage(slice.getContent(), page,
+                () -> propertyRepository.countByFilter(filter, candidates));
+    }
+
+    /**
+     * Gets the property by filter and pagination without counting the total elements
+     * @return The Slice object with the filtered properties
+     */
+    @Transactional(readOnly = true)
+    public Slice<Property> getSlicedProperties(PropertyFilter filter, Pageable pageable){
+        Pageable page = checkListing(filter, pageable);
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        if(ids.isPresent() && ids.get().isEmpty()){
+            return new SliceImpl<>(List.of(), page, false);
+        }
+        Optional<PropertyColumnSnapshot.Scan> scan = columnSnapshot.scan(filter, ids.orElse(null), page);
+        if(scan.isPresent()){
+            return new SliceImpl<>(findAllInOrder(scan.get().ids()), page,
+                    page.isPaged() && scan.get().total() > page.getOffset() + page.getPageSize());
+        }
+        return propertyRepository.findSliceByFilter(filter, ids.orElse(null), page);
+    }
+
+    /**
+     * The properties of the ids in the same order, read with one query by primary key.
+     * A property deleted after the scan is left out
+     */
+    private List<Property> findAllInOrder(List<Long> ids){
+        if(ids.isEmpty()){
+            return List.of();
+        }
+        Map<Long, Property> byId = new HashMap<>();
+        for(Property property : propertyRepository.findAllById(ids)){
+            byId.put(property.getId(), property);
+        }
+        List<Property> properties = new ArrayList<>(ids.size());
+        for(Long id : ids){
+            Property property = byId.get(id);
+            if(property != null){
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Gets the listing rows by filter and pagination without loading the entities
+     * @param descriptionLength the max characters of each description, null for the whole text
+     * @return The compact page with the filtered rows, the total elements come from the count cache
      */
-    public Page<Property> getPaginatedProperties(String location, Double price, Double sizeProperty,Pageable pageable){
-        return propertyRepository.findAllByFilter(location,price,sizeProperty,pageable);
+    @Transactional(readOnly = true)
+    public PageDTO<PropertySummaryDTO> getPropertySummaries(PropertyFilter filter, Integer descriptionLength,
+                                                            Pageable pageable){
+        if(descriptionLength != null && descriptionLength < 0){
+            throw new BadRequestException("The description length cannot be negative");
+        }
+        int length = descriptionLength == null ? FULL_DESCRIPTION_LENGTH : descriptionLength;
+        Pageable page = checkListing(filter, pageable);
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        if(ids.isPresent() && ids.get().isEmpty()){
+            return PageDTO.of(Page.empty(page));
+        }
+        Collection<Long> candidates = ids.orElse(null);
+        Slice<PropertySummaryDTO> slice = propertyRepository.findSummariesByFilter(filter, candidates, length, page);
+        return PageDTO.of(PageableExecutionUtils.getPage(slice.getContent(), page,
+                () -> propertyRepository.countByFilter(filter, candidates)));
+    }
+
+    /**
+     * Gets the price and size statistics of the filtered properties
+     * the unfiltered and range-filtered ones come from the in-memory aggregates, the rest from one aggregate query
+     * @throws BadRequestException When a range is not valid
+     */
+    public PropertyStatsDTO getStats(PropertyFilter filter){
+        checkRanges(filter);
+        Optional<PropertyStatsDTO> stats = statsAggregator.stats(filter);
+        if(stats.isPresent()){
+            return stats.get();
+        }
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        if(ids.isPresent() && ids.get().isEmpty()){
+            return new PropertyStats(statsAggregator.getBucketWidth()).toDTO();
+        }
+        return propertyRepository.findStatsByFilter(filter, ids.orElse(null), statsAggregator.getBucketWidth()).toDTO();
+    }
+
+    /**
+     * Validates the ranges and the sort of a listing
+     * @return the pageable sorted by id after the requested fields, so rows with equal values keep their page
+     */
+    private Pageable checkListing(PropertyFilter filter, Pageable pageable){
+        checkRanges(filter);
+        for(Sort.Order order : pageable.getSort()){
+            if(!SORT_FIELDS.contains(order.getProperty())){
+                throw new BadRequestException("Cannot sort by " + order.getProperty());
+            }
+        }
+        if(pageable.getSort().getOrderFor("id") != null){
+            return pageable;
+        }
+        Sort sort = pageable.getSort().and(Sort.by("id"));
+        return pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort)
+                : Pageable.unpaged(sort);
+    }
+
+    private void checkRanges(PropertyFilter filter){
+        checkRange("price", filter.price(), filter.maxPrice());
+        checkRange("size", filter.sizeProperty(), filter.maxSize());
+        checkRange("price per m2", filter.minPricePerM2(), filter.maxPricePerM2());
+    }
+
+    private void checkRange(String name, Double min, Double max){
+        if(min != null && max != null && min > max){
+            throw new BadRequestException("The min " + name + " cannot be greater than the max " + name);
+        }
+    }
+
+    /**
+     * Gets the properties by filter using keyset pagination
+     * @param sort the sort key: id, price or size
+     * @param after the cursor returned by the previous page, null for the first page
+     * @param size the page size
+     * @throws BadRequestException When the sort, cursor or size are not valid
+     * @return The page with the cursor of the next one
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<Property> getPropertiesAfter(PropertyFilter filter, String sort, String after, int size){
+        if(!PropertyCursor.SORT_KEYS.contains(sort)){
+            throw new BadRequestException("Cannot sort by " + sort);
+        }
+        if(size < 1 || size > MAX_CURSOR_PAGE_SIZE){
+            throw new BadRequestException("Size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+        }
+        PropertyCursor cursor = after == null ? PropertyCursor.start(sort) : CursorMapper.toCursor(after);
+        if(!cursor.getSortKey().equals(sort)){
+            throw new BadRequestException("The cursor was created for sort " + cursor.getSortKey());
+        }
+        checkRanges(filter);
+        Optional<List<Long>> ids = addressIndex.candidates(filter.location());
+        if(ids.isPresent() && ids.get().isEmpty()){
+            return new CursorPageDTO<>(List.of(), size, null);
+        }
+        Collection<Long> candidates = ids.orElse(null);
+        Limit limit = Limit.of(size + 1);
+        List<Property> rows = switch (sort) {
+            case "price" -> propertyRepository.findNextByPrice(filter, candidates, cursor.getValue(), cursor.getId(), limit);
+            case "size" -> propertyRepository.findNextBySize(filter, candidates, cursor.getValue(), cursor.getId(), limit);
+            default -> propertyRepository.findNextById(filter, candidates, cursor.getId(), limit);
+        };
+        if(rows.size() <= size){
+            return new CursorPageDTO<>(rows, size, null);
+        }
+        List<Property> content = rows.subList(0, size);
+        String next = CursorMapper.toToken(PropertyCursor.after(sort, content.get(size - 1)));
+        return new CursorPageDTO<>(content, size, next);
     }
 }
@@ -0,0 +1,399 @@
+package edu.eci.arep.taller5.service.Imp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.eci.arep.taller5.exception.AppException;
+import edu.eci.arep.taller5.exception.BadRequestException;
+import edu.eci.arep.taller5.exception.InternalErrorException;
+import edu.eci.arep.taller5.exception.NotFoundException;
+import edu.eci.arep.taller5.exception.ServiceUnavailableException;
+import edu.eci.arep.taller5.model.DTO.BatchItemResultDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.DTO.WriteTicketDTO;
+import edu.eci.arep.taller5.model.DTO.WriteTicketDTO.Status;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import edu.eci.arep.taller5.service.PropertyWriteQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous updates coalesced by property id: only the latest values of each id wait in the queue
+ * and a single flusher writes them with the batch update, so the database load depends on the number
+ * of distinct ids and not on the request rate.
+ * Updates of the same id are applied in arrival order (last write wins). With ordering=per-id that is the
+ * only guarantee and the ids of a batch are taken in any order; with ordering=fifo the ids are flushed in
+ * the order their first queued update arrived, so an update is never committed after one queued later for
+ * another id (an id keeps its place while newer values are coalesced into it). Each queued update keeps the
+ * version the property had when it was queued and is written only at that version, so a synchronous
+ * write committed in the meantime is never overwritten: the queued update ends SUPERSEDED.
+ * With ack=queued the caller gets its ticket as soon as the update is queued and a crash loses what
+ * was not flushed yet; with ack=flushed the caller waits until the batch with its update is committed
+ * (up to ack-timeout). While it waits the request keeps its DatabaseBulkheadInterceptor permit (and its
+ * connection), so at most app.db-gate.permits callers wait at once and the other requests of
+ * /properties queue behind them
+ */
+@Service
+public class PropertyWriteQueueImp implements PropertyWriteQueue {
+    private static final Logger log = LoggerFactory.getLogger(PropertyWriteQueueImp.class);
+
+    /**
+     * When the caller gets the ticket: after queueing the update or after its batch is committed
+     */
+    public enum Ack { QUEUED, FLUSHED }
+
+    /**
+     * Order of the ids in the flushed batches: any order or the order of their first queued update
+     */
+    public enum Ordering { PER_ID, FIFO }
+
+    /**
+     * How long the version left by a flush is remembered, longer than any submit takes from reading
+     * the version to queueing the update
+     */
+    private static final Duration FLUSHED_VERSION_TTL = Duration.ofMinutes(1);
+
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final int maxBatch;
+    private final int maxPending;
+    private final Ack ack;
+    private final Ordering ordering;
+    private final Duration ackTimeout;
+    private final PropertyRepository propertyRepository;
+    private final PropertyBatchService propertyBatchService;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Queue<Position> order = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Cache<Long, Long> flushedVersions;
+    private final Cache<String, Ticket> tickets;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Counter coalesced;
+    private final Counter flushed;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public PropertyWriteQueueImp(@Value("${app.write-queue.enabled:false}") boolean enabled,
+                                 @Value("${app.write-queue.flush-interval:200ms}") Duration flushInterval,
+                                 @Value("${app.write-queue.max-batch:500}") int maxBatch,
+                                 @Value("${app.write-queue.max-pending:10000}") int maxPending,
+                                 @Value("${app.write-queue.ack:queued}") Ack ack,
+                                 @Value("${app.write-queue.ordering:per-id}") Ordering ordering,
+                                 @Value("${app.write-queue.ack-timeout:5s}") Duration ackTimeout,
+                                 @Value("${app.write-queue.ticket-ttl:10m}") Duration ticketTtl,
+                                 PropertyRepository propertyRepository, PropertyBatchService propertyBatchService,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.maxBatch = maxBatch;
+        this.maxPending = maxPending;
+        this.ack = ack;
+        this.ordering = ordering;
+        this.ackTimeout = ackTimeout;
+        this.propertyRepository = propertyRepository;
+        this.propertyBatchService = propertyBatchService;
+        this.tickets = Caffeine.newBuilder().expireAfterWrite(ticketTtl).build();
+        this.flushedVersions = Caffeine.newBuilder().expireAfterWrite(FLUSHED_VERSION_TTL).build();
+        this.coalesced = Counter.builder("property.write.queue.coalesced")
+                .description("Queued updates replaced by a newer update of the same property")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("property.write.queue.flushed")
+                .description("Properties written by the flusher")
+                .register(meterRegistry);
+        Gauge.builder("property.write.queue.pending", pending, Map::size)
+                .description("Properties with an update waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "property-write-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes what is still queued before the application stops
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue the update of an existing property, replacing the values of a queued update of the same id
+     * @throws BadRequestException When the id of the body is not the id of the path
+     * @throws NotFoundException When the property does not exist
+     * @throws ServiceUnavailableException When max-pending properties are already waiting
+     * @return the ticket, PENDING with ack=queued
+     */
+    public WriteTicketDTO submit(Long id, PropertyDTO property) {
+        if (!enabled) {
+            throw new ServiceUnavailableException("The write queue is disabled");
+        }
+        if (property.getId() != null && !property.getId().equals(id)) {
+            throw new BadRequestException("The id property is not equals to param id");
+        }
+        property.setId(id);
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), id);
+        // The version is only read for the first update of the id, outside the entry lock. When the
+        // entry is gone by the time it is queued the version is read and the update queued again
+        Long version = pending.containsKey(id) ? null : currentVersion(id);
+        Queued queued;
+        while ((queued = enqueue(id, property, ticket, version)) == Queued.VERSION_NEEDED) {
+            version = currentVersion(id);
+        }
+        if (queued == Queued.FULL) {
+            throw new ServiceUnavailableException("Too many queued updates, retry later");
+        }
+        tickets.put(ticket.id, ticket);
+        if (pending.size() >= maxBatch && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+        if (ack == Ack.FLUSHED) {
+            try {
+                ticket.done.get(ackTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.debug("Update of property {} not flushed within {}", id, ackTimeout);
+            } catch (ExecutionException e) {
+                throw new InternalErrorException("The queued update of property " + id + " could not be written");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ticket.toDTO();
+    }
+
+    /**
+     * Coalesces the update into the queued one of the id or queues it at the given version. A flush of
+     * the id that committed after the version was read left a newer one, that one is used instead
+     * @param version the version read from the database, null when the id had a queued update
+     */
+    private Queued enqueue(Long id, PropertyDTO property, Ticket ticket, Long version) {
+        Queued[] outcome = {Queued.COALESCED};
+        pending.compute(id, (key, current) -> {
+            if (current != null) {
+                coalesced.increment();
+                current.tickets().add(ticket);
+                return new Pending(property, current.version(), current.seq(), current.tickets());
+            }
+            if (version == null) {
+                outcome[0] = Queued.VERSION_NEEDED;
+                return null;
+            }
+            if (pending.size() >= maxPending) {
+                outcome[0] = Queued.FULL;
+                return null;
+            }
+            Long flushedVersion = flushedVersions.getIfPresent(id);
+            long seq = sequence.incrementAndGet();
+            if (ordering == Ordering.FIFO) {
+                order.add(new Position(id, seq));
+            }
+            outcome[0] = Queued.NEW;
+            return new Pending(property, flushedVersion == null ? version : Math.max(version, flushedVersion),
+                    seq, new ArrayList<>(List.of(ticket)));
+        });
+        return outcome[0];
+    }
+
+    private Long currentVersion(Long id) {
+        return propertyRepository.findVersionById(id)
+                .orElseThrow(() -> new NotFoundException("Property not found with id " + id));
+    }
+
+    /**
+     * @throws NotFoundException When the ticket does not exist or expired
+     */
+    public WriteTicketDTO getTicket(String ticket) {
+        Ticket found = tickets.getIfPresent(ticket);
+        if (found == null) {
+            throw new NotFoundException("Write ticket not found " + ticket);
+        }
+        return found.toDTO();
+    }
+
+    /**
+     * Drops the queued update of the property that a committed synchronous write made obsolete, it was
+     * queued on an older version than the one the write left. An update queued after that commit is kept
+     * @param version the version left by the synchronous write, null after a delete (every update is dropped)
+     */
+    public void supersede(Long id, Long version) {
+        List<Pending> dropped = new ArrayList<>(1);
+        pending.computeIfPresent(id, (key, queued) -> {
+            if (version != null && queued.version() >= version) {
+                return queued;
+            }
+            dropped.add(queued);
+            return null;
+        });
+        dropped.forEach(queued -> queued.tickets().forEach(ticket -> ticket.complete(Status.SUPERSEDED, null)));
+    }
+
+    /**
+     * Writes the queued updates in batches of max-batch properties, each property at the version it
+     * was queued on. An update queued for an id while its batch was being written read the version
+     * before or after that commit, the ones that read it before are moved to the new version
+     */
+    void flush() {
+        flushScheduled.set(false);
+        while (!pending.isEmpty()) {
+            List<Pending> batch = nextBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                List<BatchItemResultDTO> results = propertyBatchService.updateAll(
+                        batch.stream().map(Pending::property).toList(),
+                        batch.stream().map(Pending::version).toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending written = batch.get(i);
+                    ProblemDetail error = results.get(i).getError();
+                    if (error == null) {
+                        flushedVersions.put(written.property().getId(), written.version() + 1);
+                        pending.computeIfPresent(written.property().getId(), (key, next) ->
+                                next.version().equals(written.version())
+                                        ? new Pending(next.property(), next.version() + 1, next.seq(), next.tickets())
+                                        : next);
+                    }
+                    complete(written, error);
+                }
+                flushed.increment(batch.size());
+            } catch (RuntimeException e) {
+                log.error("Flush of {} queued updates failed", batch.size(), e);
+                ProblemDetail error = AppException.from(e).toProblemDetail();
+                batch.forEach(queued -> complete(queued, error));
+            }
+        }
+    }
+
+    /**
+     * Takes up to max-batch queued updates out of the queue, in the order of their first update with
+     * ordering=fifo. A position whose update was superseded or already flushed is skipped
+     */
+    private List<Pending> nextBatch() {
+        List<Pending> batch = new ArrayList<>();
+        if (ordering == Ordering.FIFO) {
+            Position next;
+            while (batch.size() < maxBatch && (next = order.poll()) != null) {
+                Position position = next;
+                pending.computeIfPresent(position.id(), (key, queued) -> {
+                    if (queued.seq() != position.seq()) {
+                        return queued;
+                    }
+                    batch.add(queued);
+                    return null;
+                });
+            }
+            return batch;
+        }
+        for (Long id : pending.keySet()) {
+            Pending queued = pending.remove(id);
+            if (queued != null) {
+                batch.add(queued);
+            }
+            if (batch.size() == maxBatch) {
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * The last ticket of the id gets the outcome, the older ones were replaced by it. When the property
+     * is no longer at the queued version a newer write replaced all of them
+     */
+    private void complete(Pending queued, ProblemDetail error) {
+        List<Ticket> all = queued.tickets();
+        for (int i = 0; i < all.size(); i++) {
+            if (error != null && error.getStatus() == HttpStatus.PRECONDITION_FAILED.value()) {
+                all.get(i).complete(Status.SUPERSEDED, null);
+            } else if (error != null) {
+                all.get(i).complete(Status.FAILED, error);
+            } else {
+                all.get(i).complete(i == all.size() - 1 ? Status.APPLIED : Status.SUPERSEDED, null);
+            }
+        }
+    }
+
+    /**
+     * Latest values of a property, the version it had when the first of them was queued, the sequence
+     * of that first update and the tickets of every update coalesced into them
+     */
+    private record Pending(PropertyDTO property, Long version, long seq, List<Ticket> tickets) {
+    }
+
+    /**
+     * Place of an id in the fifo order, valid while the queued update of the id has the same sequence
+     */
+    private record Position(Long id, long seq) {
+    }
+
+    private enum Queued { NEW, COALESCED, VERSION_NEEDED, FULL }
+
+    private static final class Ticket {
+        private final String id;
+        private final Long propertyId;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile Status status = Status.PENDING;
+        private volatile ProblemDetail error;
+
+        private Ticket(String id, Long propertyId) {
+            this.id = id;
+            this.propertyId = propertyId;
+        }
+
+        private void complete(Status status, ProblemDetail error) {
+            this.error = error;
+            this.status = status;
+            done.complete(null);
+        }
+
+        private WriteTicketDTO toDTO() {
+            return new WriteTicketDTO(id, propertyId, status, error);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package edu.eci.arep.taller5.service;
+
+import edu.eci.arep.taller5.model.DTO.BatchItemResultDTO;
+import edu.eci.arep.taller5.model.DTO.ImportReportDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface PropertyBatchService {
+    List<BatchItemResultDTO> createAll(List<PropertyDTO> properties);
+    List<BatchItemResultDTO> updateAll(List<PropertyDTO> properties);
+    List<BatchItemResultDTO> updateAll(List<PropertyDTO> properties, List<Long> versions);
+    List<BatchItemResultDTO> deleteAll(List<Long> ids);
+    ImportReportDTO importProperties(InputStream input, String format) throws IOException;
+    void importProperties(InputStream input, String format, OutputStream progress) throws IOException;
+}
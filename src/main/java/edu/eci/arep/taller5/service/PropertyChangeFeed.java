@@ -0,0 +1,8 @@
+package edu.eci.arep.taller5.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface PropertyChangeFeed {
+    SseEmitter subscribe(String lastEventId);
+    int subscribers();
+}
@@ -0,0 +1,11 @@
+package edu.eci.arep.taller5.service;
+
+import edu.eci.arep.taller5.model.PropertyFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface PropertyExportService {
+    String mediaType(String format);
+    void export(PropertyFilter filter, String format, OutputStream out) throws IOException;
+}
@@ -1,15 +1,25 @@
 package edu.eci.arep.taller5.service;
 
+import edu.eci.arep.taller5.model.DTO.CursorPageDTO;
+import edu.eci.arep.taller5.model.DTO.PageDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
 import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyFilter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import java.util.List;
 
 public interface PropertyService {
     List<Property> getAll();
     Property getById(Long id);
     Property save(Property property);
-    Property update(Long id, Property property);
-    void delete(Long id);
-    Page<Property> getPaginatedProperties(String location, Double price, Double sizeProperty,Pageable pageable);
+    Property update(Long id, Property property, Long version);
+    void delete(Long id, Long version);
+    Page<Property> getPaginatedProperties(PropertyFilter filter, Pageable pageable);
+    Slice<Property> getSlicedProperties(PropertyFilter filter, Pageable pageable);
+    PageDTO<PropertySummaryDTO> getPropertySummaries(PropertyFilter filter, Integer descriptionLength, Pageable pageable);
+    PropertyStatsDTO getStats(PropertyFilter filter);
+    CursorPageDTO<Property> getPropertiesAfter(PropertyFilter filter, String sort, String after, int size);
 }
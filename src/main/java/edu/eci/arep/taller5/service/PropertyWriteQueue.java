@@ -0,0 +1,11 @@
+package edu.eci.arep.taller5.service;
+
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.model.DTO.WriteTicketDTO;
+
+public interface PropertyWriteQueue {
+    boolean isEnabled();
+    WriteTicketDTO submit(Long id, PropertyDTO property);
+    WriteTicketDTO getTicket(String ticket);
+    void supersede(Long id, Long version);
+}
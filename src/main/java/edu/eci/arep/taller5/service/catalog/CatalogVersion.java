@@ -0,0 +1,122 @@
+package edu.eci.arep.taller5.service.catalog;
+
+import edu.eci.arep.taller5.model.CatalogCheckedEvent;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catalog-wide change counter, the validator of the listing responses
+ * Every write of this instance bumps it, so a listing ETag can be checked without reading any property row.
+ * The writes of other instances sharing the database are seen every check-interval: the row count and
+ * the latest updated_at of the catalog are read from the primary and any change bumps the counter, so
+ * an ETag of this instance is at most check-interval older than the shared catalog. Each check is
+ * published as a CatalogCheckedEvent for the in-memory structures that must notice those writes too.
+ * The start time is part of the ETag so a restarted instance never reuses an old one
+ */
+@Component
+public class CatalogVersion {
+    private static final Logger log = LoggerFactory.getLogger(CatalogVersion.class);
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong changes = new AtomicLong();
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration checkInterval;
+    private volatile Instant lastModified = Instant.now();
+    private volatile CatalogCheckedEvent shared;
+    private ScheduledExecutorService checker;
+
+    @Autowired
+    public CatalogVersion(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                          @Value("${app.catalog.check-interval:1s}") Duration checkInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * The catalog is checked once the schema exists, a zero check-interval disables it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (checkInterval.isZero()) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-version-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = checkInterval.toMillis();
+        checker.scheduleWithFixedDelay(this::checkShared, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        bump();
+    }
+
+    /**
+     * Bumps the counter when the row count or the latest updated_at changed since the last check:
+     * an insert or update of any instance moves the latest updated_at and a delete the count.
+     * Outside a transaction the query is sent to the primary, a replica could still miss the change
+     */
+    public void checkShared() {
+        try {
+            CatalogCheckedEvent checked = jdbcTemplate.queryForObject("SELECT COUNT(*), MAX(updated_at) FROM property",
+                    (rs, row) -> {
+                        Timestamp lastUpdate = rs.getTimestamp(2);
+                        return new CatalogCheckedEvent(rs.getLong(1), lastUpdate == null ? null : lastUpdate.toInstant());
+                    });
+            CatalogCheckedEvent previous = shared;
+            shared = checked;
+            if (previous != null && !previous.equals(checked)) {
+                bump();
+            }
+            eventPublisher.publishEvent(checked);
+        } catch (DataAccessException e) {
+            log.warn("Catalog version check failed", e);
+        }
+    }
+
+    /**
+     * Strong ETag of the catalog, read it before querying so the body is never older than the tag
+     */
+    public String etag() {
+        return "\"catalog-" + epoch + "-" + changes.get() + "\"";
+    }
+
+    public Instant lastModified() {
+        return lastModified;
+    }
+
+    private void bump() {
+        lastModified = Instant.now();
+        changes.incrementAndGet();
+    }
+}
@@ -0,0 +1,382 @@
+package edu.eci.arep.taller5.service.index;
+
+import edu.eci.arep.taller5.model.CatalogCheckedEvent;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyAddress;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over Property.address, used to answer the location
+ * substring filter without a leading-wildcard LIKE scan.
+ * It only sees the writes of this instance. Every catalog check (CatalogVersion) is compared with the
+ * rows and the latest updated_at it holds: when they differ the index missed writes of another instance
+ * sharing the database and the location filters fall back to LIKE. Still differing at the next check
+ * (not just a local commit whose event was on its way) the index is rebuilt in the background
+ */
+@Component
+public class AddressTrigramIndex {
+    private static final Logger log = LoggerFactory.getLogger(AddressTrigramIndex.class);
+    private static final int GRAM = 3;
+    private static final int BUILD_BATCH = 10_000;
+    // updated_at may be rounded to microseconds by the database
+    private static final Duration TIME_PRECISION = Duration.ofNanos(1000);
+
+    private final PropertyRepository propertyRepository;
+    private final int maxCandidates;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Contents contents = new Contents();
+    // Ids changed while building, the rows read before the change must not overwrite them
+    private Set<Long> changedWhileBuilding = new HashSet<>();
+    private volatile boolean ready;
+    private volatile boolean missedWrites;
+    private volatile boolean behindAtLastCheck;
+    private final AtomicBoolean building = new AtomicBoolean();
+    private ExecutorService rebuilder;
+
+    @Autowired
+    public AddressTrigramIndex(PropertyRepository propertyRepository,
+                               @Value("${app.index.address.max-candidates:1000}") int maxCandidates,
+                               MeterRegistry meterRegistry) {
+        this.propertyRepository = propertyRepository;
+        this.maxCandidates = maxCandidates;
+        Gauge.builder("property.address.index.memory", this, AddressTrigramIndex::estimatedBytes)
+                .description("Estimated heap used by the address trigram index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("property.address.index.entries", this, AddressTrigramIndex::size)
+                .description("Properties in the address trigram index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads every address in id order, in batches so the whole table is never in memory as entities.
+     * The rows are loaded next to the current contents, which keep receiving the changes, and replace
+     * them at the end: the ids changed meanwhile keep their current address
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        building.set(true);
+        lock.writeLock().lock();
+        try {
+            if (changedWhileBuilding == null) {
+                changedWhileBuilding = new HashSet<>();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long start = System.currentTimeMillis();
+        Contents loaded = new Contents();
+        Long afterId = Long.MIN_VALUE;
+        List<PropertyAddress> batch;
+        do {
+            batch = propertyRepository.findAddressesAfter(afterId, Limit.of(BUILD_BATCH));
+            for (PropertyAddress row : batch) {
+                loaded.put(row.getId(), row.getAddress(), row.getUpdatedAt());
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == BUILD_BATCH);
+        lock.writeLock().lock();
+        try {
+            for (Long id : changedWhileBuilding) {
+                loaded.remove(id);
+                String address = contents.addresses.get(id);
+                if (address != null) {
+                    loaded.put(id, address, contents.lastUpdate);
+                }
+            }
+            contents = loaded;
+            changedWhileBuilding = null;
+            behindAtLastCheck = false;
+            missedWrites = false;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+            building.set(false);
+        }
+        log.info("Address trigram index built with {} properties in {} ms", size(), System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * Keeps the index in sync with the service write paths, after the commit so a rolled back write is never indexed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (changedWhileBuilding != null) {
+                changedWhileBuilding.add(event.getId());
+            }
+            contents.remove(event.getId());
+            Property property = event.getProperty();
+            if (property != null) {
+                contents.put(event.getId(), property.getAddress(), property.getUpdatedAt());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compares the shared catalog with the index: the same number of rows and no newer updated_at
+     */
+    @EventListener
+    public void onCatalogChecked(CatalogCheckedEvent checked) {
+        if (!ready || building.get()) {
+            return;
+        }
+        boolean behind;
+        lock.readLock().lock();
+        try {
+            behind = contents.addresses.size() != checked.rows() || checked.lastUpdate() != null
+                    && (contents.lastUpdate == null || checked.lastUpdate().isAfter(contents.lastUpdate.plus(TIME_PRECISION)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (behind && !missedWrites) {
+            log.info("Address trigram index missed writes of another instance, location filters use LIKE");
+        }
+        missedWrites = behind;
+        if (behind && behindAtLastCheck) {
+            rebuild();
+        }
+        behindAtLastCheck = behind;
+    }
+
+    private synchronized void rebuild() {
+        if (building.get()) {
+            return;
+        }
+        if (rebuilder == null) {
+            rebuilder = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "address-index-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        building.set(true);
+        rebuilder.execute(this::build);
+    }
+
+    /**
+     * Gets the ids of the properties whose address contains the location
+     * @param location the lower-cased location filter
+     * @return the matching ids, or empty when the index cannot answer the filter (not built yet, missed
+     * writes of another instance, location shorter than a trigram or too many matches) and the query
+     * must fall back to LIKE
+     */
+    public Optional<List<Long>> candidates(String location) {
+        if (!ready || missedWrites || location == null || location.length() < GRAM) {
+            return Optional.empty();
+        }
+        long[] grams = trigrams(location);
+        lock.readLock().lock();
+        try {
+            Map<Long, IdList> postings = contents.postings;
+            List<IdList> lists = new ArrayList<>(grams.length);
+            for (long gram : grams) {
+                IdList list = postings.get(gram);
+                if (list == null) {
+                    return Optional.of(List.of());
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(IdList::size));
+            long[] ids = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            int count = ids.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = lists.get(i).retainIn(ids, count);
+            }
+            List<Long> matches = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (contents.addresses.get(ids[i]).contains(location)) {
+                    if (matches.size() == maxCandidates) {
+                        return Optional.empty();
+                    }
+                    matches.add(ids[i]);
+                }
+            }
+            return Optional.of(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return contents.addresses.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rough heap estimate: posting arrays, stored addresses and the hash map entries holding them,
+     * kept as they change
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return contents.bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Posting lists and addresses by id, an empty address for the properties without one so every
+     * row is counted. Only changed under the write lock, or before being published by a build
+     */
+    private static class Contents {
+        private final Map<Long, IdList> postings = new HashMap<>();
+        private final Map<Long, String> addresses = new HashMap<>();
+        private long bytes;
+        private Instant lastUpdate;
+
+        void put(Long id, String address, Instant updatedAt) {
+            if (updatedAt != null && (lastUpdate == null || updatedAt.isAfter(lastUpdate))) {
+                lastUpdate = updatedAt;
+            }
+            String normalized = address == null ? "" : address.toLowerCase(Locale.ROOT);
+            String previous = addresses.put(id, normalized);
+            if (previous != null) {
+                bytes -= 64 + 40 + previous.length();
+            }
+            bytes += 64 + 40 + normalized.length();
+            for (long gram : trigrams(normalized)) {
+                IdList list = postings.get(gram);
+                if (list == null) {
+                    list = new IdList();
+                    postings.put(gram, list);
+                    bytes += 64 + 16 + 8L * list.ids.length;
+                }
+                int capacity = list.ids.length;
+                list.add(id);
+                bytes += 8L * (list.ids.length - capacity);
+            }
+        }
+
+        void remove(Long id) {
+            String previous = addresses.remove(id);
+            if (previous == null) {
+                return;
+            }
+            bytes -= 64 + 40 + previous.length();
+            for (long gram : trigrams(previous)) {
+                IdList list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                    bytes -= 64 + 16 + 8L * list.ids.length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Distinct trigrams of the text, each one packed as three 16-bit chars
+     */
+    private static long[] trigrams(String text) {
+        if (text.length() < GRAM) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - GRAM + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    /**
+     * Sorted list of property ids
+     */
+    private static class IdList {
+        private long[] ids = new long[4];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Keeps in the first count positions of target only the ids also present in this list
+         * @return the new count
+         */
+        int retainIn(long[] target, int count) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && ids[j] < target[i]) {
+                    j++;
+                }
+                if (j < size && ids[j] == target[i]) {
+                    target[kept++] = target[i];
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package edu.eci.arep.taller5.service.snapshot;
+
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.model.PropertyColumns;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional in-memory copy of the columns the listings filter and sort by: ids in a long[] kept in id
+ * order, price and size in double[] (NaN for null) and the lower-cased addresses dictionary-encoded as
+ * int codes. A listing is answered with one scan over the arrays, without allocating per row, that
+ * gives the ids of the page and the exact total; only the rows of the page are then read from the
+ * database by primary key.
+ * Kept in sync with the committed changes like the address index. While it is being built, or for a
+ * sort it can not answer (address or more than one field before the id), the listing goes to the database
+ */
+@Component
+public class PropertyColumnSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(PropertyColumnSnapshot.class);
+    private static final int BUILD_BATCH = 10_000;
+    // Deleted rows are compacted away when they are more than this part of the rows
+    private static final int COMPACT_RATIO = 4;
+    private static final int MIN_COMPACT_ROWS = 1024;
+    // Rows selected at a time, the matches of a block fit in a small reused buffer
+    private static final int BLOCK = 1024;
+
+    private final PropertyRepository propertyRepository;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Counter fallbacks;
+    private long[] ids = new long[1024];
+    private double[] prices = new double[1024];
+    private double[] sizes = new double[1024];
+    private int[] addressCodes = new int[1024];
+    private boolean[] deleted = new boolean[1024];
+    private int rows;
+    private int deletedRows;
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> addresses = new ArrayList<>();
+    // Ids changed while building, the rows read before the change must not overwrite them
+    private Set<Long> changedWhileBuilding = new HashSet<>();
+    private volatile boolean ready;
+
+    /**
+     * Page of the scan, the ids are in the order of the listing sort
+     */
+    public record Scan(List<Long> ids, long total) {
+    }
+
+    @Autowired
+    public PropertyColumnSnapshot(PropertyRepository propertyRepository,
+                                  @Value("${app.snapshot.enabled:false}") boolean enabled,
+                                  MeterRegistry meterRegistry) {
+        this.propertyRepository = propertyRepository;
+        this.enabled = enabled;
+        this.fallbacks = Counter.builder("property.snapshot.fallback")
+                .description("Listings the column snapshot could not answer and were queried")
+                .register(meterRegistry);
+        Gauge.builder("property.snapshot.rows", this, PropertyColumnSnapshot::size)
+                .description("Properties in the column snapshot")
+                .register(meterRegistry);
+        Gauge.builder("property.snapshot.memory", this, PropertyColumnSnapshot::estimatedBytes)
+                .description("Estimated heap used by the column snapshot")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads the columns of every property in id order, in batches. Changes committed while loading
+     * are applied as they come and their ids are skipped by the batches read afterwards
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Long afterId = Long.MIN_VALUE;
+        List<PropertyColumns> batch;
+        do {
+            batch = propertyRepository.findColumnsAfter(afterId, Limit.of(BUILD_BATCH));
+            lock.writeLock().lock();
+            try {
+                for (PropertyColumns row : batch) {
+                    if (!changedWhileBuilding.contains(row.getId())) {
+                        put(row.getId(), row.getAddress(), row.getPrice(), row.getSize());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == BUILD_BATCH);
+        lock.writeLock().lock();
+        try {
+            changedWhileBuilding = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Property column snapshot built with {} properties in {} ms", size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * After the commit, so a rolled back write is never listed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (changedWhileBuilding != null) {
+                changedWhileBuilding.add(event.getId());
+            }
+            Property property = event.getProperty();
+            if (property == null) {
+                remove(event.getId());
+            } else {
+                put(event.getId(), property.getAddress(), property.getPrice(), property.getSize());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scans the columns for a page of the listing
+     * @param candidates the ids of the address index for the location, null to match the location here
+     * @param pageable the checked pageable of the listing, its sort ends with the id
+     * @return the ids of the page and the total, or empty when the listing must be queried
+     */
+    public Optional<Scan> scan(PropertyFilter filter, Collection<Long> candidates, Pageable pageable) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Sort.Order> orders = pageable.getSort().toList();
+        Column column = orders.size() == 2 ? Column.of(orders.get(0).getProperty()) : null;
+        Sort.Order idOrder = orders.get(orders.size() - 1);
+        if (!ready || orders.size() > 2 || !"id".equals(idOrder.getProperty()) || orders.size() == 2 && column == null) {
+            fallbacks.increment();
+            return Optional.empty();
+        }
+        int limit = pageable.isPaged() ? (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize())
+                : Integer.MAX_VALUE;
+        lock.readLock().lock();
+        try {
+            // The candidates already contain the location, only their rows are scanned
+            int[] candidateRows = candidates == null ? null : rowsOf(candidates);
+            Matcher matcher = new Matcher(candidates == null ? filter : filter.withLocation(null));
+            int scanned = candidateRows == null ? rows : candidateRows.length;
+            int offset = (int) Math.min(scanned, pageable.isPaged() ? pageable.getOffset() : 0);
+            int[] block = new int[BLOCK];
+            int[] page;
+            long total = 0;
+            if (column == null) {
+                // Rows are in id order: the page is the matches from the offset on (walking the blocks
+                // backwards when descending), only those are kept
+                page = new int[Math.max(0, Math.min(limit, scanned) - offset)];
+                int kept = 0;
+                boolean ascending = idOrder.isAscending();
+                int blocks = (scanned + BLOCK - 1) / BLOCK;
+                for (int b = 0; b < blocks; b++) {
+                    int start = (ascending ? b : blocks - 1 - b) * BLOCK;
+                    int selected = matcher.select(candidateRows, start, Math.min(scanned, start + BLOCK), block);
+                    for (int i = (int) Math.max(0, offset - total); i < selected && kept < page.length; i++) {
+                        page[kept++] = block[ascending ? i : selected - 1 - i];
+                    }
+                    total += selected;
+                }
+                page = Arrays.copyOf(page, kept);
+            } else {
+                TopRows heap = new TopRows(Math.min(limit, scanned), column, orders.get(0).isAscending(), idOrder.isAscending());
+                for (int start = 0; start < scanned; start += BLOCK) {
+                    int selected = matcher.select(candidateRows, start, Math.min(scanned, start + BLOCK), block);
+                    for (int i = 0; i < selected; i++) {
+                        heap.offer(block[i]);
+                    }
+                    total += selected;
+                }
+                int[] top = heap.sorted();
+                page = Arrays.copyOfRange(top, Math.min(offset, top.length), top.length);
+            }
+            List<Long> pageIds = new ArrayList<>(page.length);
+            for (int row : page) {
+                pageIds.add(ids[row]);
+            }
+            return Optional.of(new Scan(pageIds, total));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows - deletedRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Arrays plus the dictionary strings and their map entries
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (8L + 8 + 8 + 4 + 1) * ids.length;
+            for (String address : addresses) {
+                bytes += 64 + 40 + address.length();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long id, String address, Double price, Double size) {
+        int row = find(id);
+        if (row < 0) {
+            row = -row - 1;
+            insertAt(row, id);
+        } else if (deleted[row]) {
+            deleted[row] = false;
+            deletedRows--;
+        }
+        prices[row] = price == null ? Double.NaN : price;
+        sizes[row] = size == null ? Double.NaN : size;
+        addressCodes[row] = code(address);
+    }
+
+    private void remove(long id) {
+        int row = find(id);
+        if (row < 0 || deleted[row]) {
+            return;
+        }
+        deleted[row] = true;
+        deletedRows++;
+        if (deletedRows > MIN_COMPACT_ROWS && deletedRows > rows / COMPACT_RATIO) {
+            compact();
+        }
+    }
+
+    /**
+     * The rows of the ids in row (id) order, the ids that are not in the snapshot are left out
+     */
+    private int[] rowsOf(Collection<Long> candidates) {
+        int[] found = new int[candidates.size()];
+        int count = 0;
+        for (Long id : candidates) {
+            int row = find(id);
+            if (row >= 0) {
+                found[count++] = row;
+            }
+        }
+        Arrays.sort(found, 0, count);
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Binary search of the row of an id, including deleted rows
+     * @return the row, or -(insertion point) - 1
+     */
+    private int find(long id) {
+        return Arrays.binarySearch(ids, 0, rows, id);
+    }
+
+    /**
+     * New ids come from a sequence so they are almost always appended, an older id shifts the rows after it
+     */
+    private void insertAt(int row, long id) {
+        if (rows == ids.length) {
+            int capacity = rows * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            addressCodes = Arrays.copyOf(addressCodes, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+        }
+        int moved = rows - row;
+        if (moved > 0) {
+            System.arraycopy(ids, row, ids, row + 1, moved);
+            System.arraycopy(prices, row, prices, row + 1, moved);
+            System.arraycopy(sizes, row, sizes, row + 1, moved);
+            System.arraycopy(addressCodes, row, addressCodes, row + 1, moved);
+            System.arraycopy(deleted, row, deleted, row + 1, moved);
+        }
+        ids[row] = id;
+        deleted[row] = false;
+        rows++;
+    }
+
+    /**
+     * Removes the deleted rows and the addresses no row uses anymore
+     */
+    private void compact() {
+        String[] previous = addresses.toArray(String[]::new);
+        codes.clear();
+        addresses.clear();
+        int kept = 0;
+        for (int row = 0; row < rows; row++) {
+            if (deleted[row]) {
+                continue;
+            }
+            ids[kept] = ids[row];
+            prices[kept] = prices[row];
+            sizes[kept] = sizes[row];
+            addressCodes[kept] = addressCodes[row] < 0 ? -1 : code(previous[addressCodes[row]]);
+            deleted[kept] = false;
+            kept++;
+        }
+        rows = kept;
+        deletedRows = 0;
+    }
+
+    /**
+     * Dictionary code of the lower-cased address, -1 for no address
+     */
+    private int code(String address) {
+        if (address == null) {
+            return -1;
+        }
+        return codes.computeIfAbsent(address.toLowerCase(Locale.ROOT), normalized -> {
+            addresses.add(normalized);
+            return addresses.size() - 1;
+        });
+    }
+
+    private enum Column {
+        PRICE, SIZE, PRICE_PER_M2;
+
+        static Column of(String property) {
+            return switch (property) {
+                case "price" -> PRICE;
+                case "size" -> SIZE;
+                case "pricePerM2" -> PRICE_PER_M2;
+                default -> null;
+            };
+        }
+    }
+
+    private double value(Column column, int row) {
+        return switch (column) {
+            case PRICE -> prices[row];
+            case SIZE -> sizes[row];
+            case PRICE_PER_M2 -> pricePerM2(row);
+        };
+    }
+
+    /**
+     * Same as Property.touch, NaN when the price is missing or the size is not positive
+     */
+    private double pricePerM2(int row) {
+        return sizes[row] > 0 ? prices[row] / sizes[row] : Double.NaN;
+    }
+
+    /**
+     * The filter turned into plain comparisons over the columns, a missing value never matches a given
+     * range like NULL in SQL. The location is matched once per distinct address instead of once per row
+     */
+    private final class Matcher {
+        // Indexed by address code + 1, the first one is for the rows without address
+        private final boolean[] addressMatches;
+        private final double minPrice;
+        private final double maxPrice;
+        private final double minSize;
+        private final double maxSize;
+        private final double minPricePerM2;
+        private final double maxPricePerM2;
+        private final boolean price;
+        private final boolean size;
+        private final boolean pricePerM2;
+
+        Matcher(PropertyFilter filter) {
+            if (filter.location() != null) {
+                addressMatches = new boolean[addresses.size() + 1];
+                for (int code = 0; code < addresses.size(); code++) {
+                    addressMatches[code + 1] = addresses.get(code).contains(filter.location());
+                }
+            } else {
+                addressMatches = null;
+            }
+            price = filter.price() != null || filter.maxPrice() != null;
+            minPrice = filter.price() == null ? Double.NEGATIVE_INFINITY : filter.price();
+            maxPrice = filter.maxPrice() == null ? Double.POSITIVE_INFINITY : filter.maxPrice();
+            size = filter.sizeProperty() != null || filter.maxSize() != null;
+            minSize = filter.sizeProperty() == null ? Double.NEGATIVE_INFINITY : filter.sizeProperty();
+            maxSize = filter.maxSize() == null ? Double.POSITIVE_INFINITY : filter.maxSize();
+            pricePerM2 = filter.minPricePerM2() != null || filter.maxPricePerM2() != null;
+            minPricePerM2 = filter.minPricePerM2() == null ? Double.NEGATIVE_INFINITY : filter.minPricePerM2();
+            maxPricePerM2 = filter.maxPricePerM2() == null ? Double.POSITIVE_INFINITY : filter.maxPricePerM2();
+        }
+
+        /**
+         * Writes the matching rows between start and end into out, in row order. The row is always written
+         * and only the count depends on the match, so the loop has no branch on the data to mispredict
+         * @param candidates the rows to scan, null to scan the rows from start to end themselves
+         * @return the number of matching rows
+         */
+        int select(int[] candidates, int start, int end, int[] out) {
+            int selected = 0;
+            for (int i = start; i < end; i++) {
+                int row = candidates == null ? i : candidates[i];
+                out[selected] = row;
+                selected += matches(row) ? 1 : 0;
+            }
+            return selected;
+        }
+
+        /**
+         * The conditions are combined with non-short-circuit operators, NaN fails every comparison
+         * so a missing value is excluded by any given range
+         */
+        private boolean matches(int row) {
+            double p = prices[row];
+            double s = sizes[row];
+            boolean match = !deleted[row]
+                    & (!price | (p >= minPrice & p <= maxPrice))
+                    & (!size | (s >= minSize & s <= maxSize));
+            if (pricePerM2) {
+                double m2 = p / s;
+                match &= s > 0 & m2 >= minPricePerM2 & m2 <= maxPricePerM2;
+            }
+            if (addressMatches != null) {
+                match &= addressMatches[addressCodes[row] + 1];
+            }
+            return match;
+        }
+    }
+
+    /**
+     * Bounded heap of the first rows in the listing order: by the column, missing values first when
+     * ascending like MySQL, then by id. The root is the last of the kept rows
+     */
+    private final class TopRows {
+        private final int[] heap;
+        private final Column column;
+        private final boolean ascending;
+        private final boolean idAscending;
+        private int size;
+        // The value of the root once the heap is full
+        private double last;
+
+        TopRows(int capacity, Column column, boolean ascending, boolean idAscending) {
+            this.heap = new int[capacity];
+            this.column = column;
+            this.ascending = ascending;
+            this.idAscending = idAscending;
+        }
+
+        void offer(int row) {
+            if (size < heap.length) {
+                heap[size] = row;
+                siftUp(size++);
+                last = size == heap.length ? value(column, heap[0]) : Double.NaN;
+                return;
+            }
+            // Most rows come after the last kept one, they are rejected by the value alone
+            int byValue = compareValues(value(column, row), last);
+            if (size > 0 && (ascending ? byValue : -byValue) <= 0 && compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(0, size);
+                last = value(column, heap[0]);
+            }
+        }
+
+        /**
+         * Empties the heap into the listing order
+         */
+        int[] sorted() {
+            for (int end = size - 1; end > 0; end--) {
+                int last = heap[0];
+                heap[0] = heap[end];
+                heap[end] = last;
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(heap, size);
+        }
+
+        private int compare(int a, int b) {
+            // The rows are in id order so the row index breaks the ties
+            int byValue = compareValues(value(column, a), value(column, b));
+            if (byValue != 0) {
+                return ascending ? byValue : -byValue;
+            }
+            return idAscending ? Integer.compare(a, b) : Integer.compare(b, a);
+        }
+
+        /**
+         * NaN (a missing value) as the smallest value
+         */
+        private static int compareValues(double x, double y) {
+            return Double.isNaN(x) ? (Double.isNaN(y) ? 0 : -1) : Double.isNaN(y) ? 1 : Double.compare(x, y);
+        }
+
+        private void siftUp(int at) {
+            while (at > 0) {
+                int parent = (at - 1) / 2;
+                if (compare(heap[at], heap[parent]) <= 0) {
+                    return;
+                }
+                swap(at, parent);
+                at = parent;
+            }
+        }
+
+        private void siftDown(int at, int end) {
+            while (true) {
+                int child = 2 * at + 1;
+                if (child >= end) {
+                    return;
+                }
+                if (child + 1 < end && compare(heap[child + 1], heap[child]) > 0) {
+                    child++;
+                }
+                if (compare(heap[at], heap[child]) >= 0) {
+                    return;
+                }
+                swap(at, child);
+                at = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = heap[a];
+            heap[a] = heap[b];
+            heap[b] = row;
+        }
+    }
+}
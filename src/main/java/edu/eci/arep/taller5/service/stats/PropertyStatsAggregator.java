@@ -0,0 +1,214 @@
+package edu.eci.arep.taller5.service.stats;
+
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+import edu.eci.arep.taller5.model.Property;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.model.PropertyFilter;
+import edu.eci.arep.taller5.model.PropertyStats;
+import edu.eci.arep.taller5.model.PropertyValues;
+import edu.eci.arep.taller5.repository.PropertyRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * In-memory statistics of the catalog kept up to date with every committed change, so the unfiltered
+ * statistics and the ones of the configured common range filters (app.stats.filters) cost the same with
+ * any catalog size. The price and size of each property are kept to know what an update or delete removes.
+ * Any other filter is left to the database, so asking for it never holds the lock of the aggregates
+ */
+@Component
+public class PropertyStatsAggregator {
+    private static final Logger log = LoggerFactory.getLogger(PropertyStatsAggregator.class);
+    private static final int BUILD_BATCH = 10_000;
+    private static final List<String> RANGE_PARAMS =
+            List.of("price", "maxPrice", "sizeProperty", "maxSize", "minPricePerM2", "maxPricePerM2");
+
+    private final PropertyRepository propertyRepository;
+    private final double bucketWidth;
+    private final Map<Long, Values> values = new HashMap<>();
+    private final PropertyStats all;
+    private final Map<PropertyFilter, PropertyStats> filtered = new HashMap<>();
+    // Ids changed while building, the rows read before the change must not overwrite them
+    private Set<Long> changedWhileBuilding = new HashSet<>();
+    private boolean ready;
+
+    @Autowired
+    public PropertyStatsAggregator(PropertyRepository propertyRepository,
+                                   @Value("${app.stats.price-bucket-width:50000}") double bucketWidth,
+                                   @Value("${app.stats.filters:}") List<String> filters,
+                                   MeterRegistry meterRegistry) {
+        this.propertyRepository = propertyRepository;
+        this.bucketWidth = bucketWidth;
+        this.all = new PropertyStats(bucketWidth);
+        for (String filter : filters) {
+            if (!filter.isBlank()) {
+                this.filtered.put(parseFilter(filter.trim()), new PropertyStats(bucketWidth));
+            }
+        }
+        Gauge.builder("property.stats.filters", this, PropertyStatsAggregator::filters)
+                .description("Range filters whose statistics are kept up to date in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads a range filter written as the query parameters of the listing, e.g. price=100000&maxPrice=500000
+     * @throws IllegalArgumentException for a location or an unknown parameter
+     */
+    static PropertyFilter parseFilter(String query) {
+        Map<String, Double> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] pair = param.split("=", 2);
+            if (pair.length != 2 || !RANGE_PARAMS.contains(pair[0].trim())) {
+                throw new IllegalArgumentException("app.stats.filters only takes " + RANGE_PARAMS + ": " + query);
+            }
+            params.put(pair[0].trim(), Double.valueOf(pair[1].trim()));
+        }
+        return new PropertyFilter(null, params.get("price"), params.get("maxPrice"), params.get("sizeProperty"),
+                params.get("maxSize"), params.get("minPricePerM2"), params.get("maxPricePerM2"));
+    }
+
+    /**
+     * Loads the price and size of every property in id order, in batches
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        Long afterId = Long.MIN_VALUE;
+        List<PropertyValues> batch;
+        do {
+            batch = propertyRepository.findValuesAfter(afterId, Limit.of(BUILD_BATCH));
+            synchronized (this) {
+                for (PropertyValues row : batch) {
+                    if (!changedWhileBuilding.contains(row.getId())) {
+                        put(row.getId(), new Values(row.getPrice(), row.getSize()));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == BUILD_BATCH);
+        int size;
+        synchronized (this) {
+            changedWhileBuilding = null;
+            ready = true;
+            size = values.size();
+        }
+        log.info("Property statistics built with {} properties in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * After the commit, so a rolled back write is never counted
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onPropertyChanged(PropertyChangedEvent event) {
+        if (changedWhileBuilding != null) {
+            changedWhileBuilding.add(event.getId());
+        }
+        remove(event.getId());
+        Property property = event.getProperty();
+        if (property != null) {
+            put(event.getId(), new Values(property.getPrice(), property.getSize()));
+        }
+    }
+
+    /**
+     * Gets the statistics from memory, only for no filter or one of the configured filters
+     * @return the statistics, or empty when they must be queried (not built yet or any other filter)
+     */
+    public synchronized Optional<PropertyStatsDTO> stats(PropertyFilter filter) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        if (filter.equals(PropertyFilter.NONE)) {
+            return Optional.of(fresh(all, PropertyFilter.NONE).toDTO());
+        }
+        PropertyStats stats = filtered.get(filter);
+        return stats == null ? Optional.empty() : Optional.of(fresh(stats, filter).toDTO());
+    }
+
+    public double getBucketWidth() {
+        return bucketWidth;
+    }
+
+    public synchronized int filters() {
+        return filtered.size();
+    }
+
+    /**
+     * Recomputes the min and max of an aggregate after its min or max was removed
+     */
+    private PropertyStats fresh(PropertyStats stats, PropertyFilter filter) {
+        if (stats.isStale()) {
+            stats.resetRange();
+            for (Values value : values.values()) {
+                if (value.matches(filter)) {
+                    stats.addRange(value.price(), value.size());
+                }
+            }
+        }
+        return stats;
+    }
+
+    private void put(Long id, Values value) {
+        values.put(id, value);
+        all.add(value.price(), value.size());
+        filtered.forEach((filter, stats) -> {
+            if (value.matches(filter)) {
+                stats.add(value.price(), value.size());
+            }
+        });
+    }
+
+    private void remove(Long id) {
+        Values previous = values.remove(id);
+        if (previous == null) {
+            return;
+        }
+        all.remove(previous.price(), previous.size());
+        filtered.forEach((filter, stats) -> {
+            if (previous.matches(filter)) {
+                stats.remove(previous.price(), previous.size());
+            }
+        });
+    }
+
+    /**
+     * Price and size of a property, a range filter on a missing value does not match like in SQL
+     */
+    private record Values(Double price, Double size) {
+        Double pricePerM2() {
+            return price == null || size == null || size <= 0 ? null : price / size;
+        }
+
+        boolean matches(PropertyFilter filter) {
+            return atLeast(price, filter.price()) && atMost(price, filter.maxPrice())
+                    && atLeast(size, filter.sizeProperty()) && atMost(size, filter.maxSize())
+                    && atLeast(pricePerM2(), filter.minPricePerM2()) && atMost(pricePerM2(), filter.maxPricePerM2());
+        }
+
+        private static boolean atLeast(Double value, Double min) {
+            return min == null || value != null && value >= min;
+        }
+
+        private static boolean atMost(Double value, Double max) {
+            return max == null || value != null && value <= max;
+        }
+    }
+}
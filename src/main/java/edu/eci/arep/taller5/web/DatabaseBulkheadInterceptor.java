@@ -0,0 +1,81 @@
+package edu.eci.arep.taller5.web;
+
+import edu.eci.arep.taller5.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkhead in front of the handlers that use the database: at most as many requests as
+ * connections in the pool run at once, the rest wait up to max-wait and then get a 503.
+ * With virtual threads this keeps thousands of concurrent requests from piling up on the
+ * Hikari pool; the permit is held for the whole request because open-in-view keeps the
+ * connection until the response is written (including async streaming responses)
+ */
+@Component
+public class DatabaseBulkheadInterceptor implements HandlerInterceptor {
+    private static final String PERMIT = DatabaseBulkheadInterceptor.class.getName() + ".PERMIT";
+
+    private final boolean enabled;
+    private final Semaphore permits;
+    private final long maxWaitNanos;
+
+    @Autowired
+    public DatabaseBulkheadInterceptor(@Value("${app.db-gate.enabled:true}") boolean enabled,
+                                       @Value("${app.db-gate.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+                                       @Value("${app.db-gate.max-wait:2s}") Duration maxWait,
+                                       MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.permits = new Semaphore(permits, true);
+        this.maxWaitNanos = maxWait.toNanos();
+        Gauge.builder("db.gate.permits.available", this.permits, Semaphore::availablePermits)
+                .description("Free permits of the database bulkhead")
+                .register(meterRegistry);
+        Gauge.builder("db.gate.waiting", this.permits, Semaphore::getQueueLength)
+                .description("Requests waiting for a permit of the database bulkhead")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws ServiceUnavailableException When no permit is released within max-wait
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws InterruptedException {
+        if (!enabled || request.getAttribute(PERMIT) != null) {
+            return true;
+        }
+        if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+            throw new ServiceUnavailableException("Too many concurrent database requests, retry later",
+                    Duration.ofNanos(maxWaitNanos));
+        }
+        request.setAttribute(PERMIT, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * @return requests waiting for a permit
+     */
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Not called on the first dispatch of an async request, only when the async processing completes
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT) != null) {
+            request.removeAttribute(PERMIT);
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package edu.eci.arep.taller5.web;
+
+import edu.eci.arep.taller5.config.CacheConfig;
+import edu.eci.arep.taller5.config.ReplicaRoutingDataSource;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.service.catalog.CatalogVersion;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of the serialized listing responses, stored both as they are and gzip-compressed.
+ * There is no brotli variant: the JDK has no brotli encoder and the available ones are native libraries.
+ * A hit is written straight from the stored bytes, without querying, serializing or compressing again.
+ * Keys are the path plus the normalized query parameters, prefixed with the catalog ETag read before
+ * the request runs, so a response built while a write was happening is never served after it.
+ * Every write clears the cache, and a response whose reads may miss a recent write (ReplicaRoutingDataSource)
+ * is not stored. Cross-origin requests skip the cache since their CORS headers depend on the Origin
+ */
+@Component
+public class ListingResponseCacheFilter extends OncePerRequestFilter {
+    private final Cache cache;
+    private final CatalogVersion catalogVersion;
+
+    @Autowired
+    public ListingResponseCacheFilter(CacheManager cacheManager, CatalogVersion catalogVersion) {
+        this.cache = cacheManager.getCache(CacheConfig.LISTING_RESPONSES);
+        this.catalogVersion = catalogVersion;
+    }
+
+    @EventListener
+    public void onPropertyChanged(PropertyChangedEvent event) {
+        cache.clear();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod()) || request.getHeader(HttpHeaders.ORIGIN) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = catalogVersion.etag() + " " + key(request);
+        CachedListing cached = cache.get(key, CachedListing.class);
+        if (cached != null) {
+            write(cached, request, response);
+            return;
+        }
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+        String contentType = wrapper.getContentType();
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK || contentType == null
+                || ReplicaRoutingDataSource.readsMayMissWrites()
+                || !MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        byte[] body = wrapper.getContentAsByteArray();
+        HttpHeaders validators = new HttpHeaders();
+        validators.setETag(wrapper.getHeader(HttpHeaders.ETAG));
+        String lastModified = wrapper.getHeader(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            validators.set(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        CachedListing listing = new CachedListing(contentType, validators.getETag(), validators.getLastModified(),
+                List.copyOf(wrapper.getHeaders(HttpHeaders.VARY)), body, gzip(body));
+        cache.put(key, listing);
+        write(listing, request, response);
+    }
+
+    /**
+     * Path plus the query parameters sorted by name, the location trimmed and lower-cased like the service does
+     */
+    private String key(HttpServletRequest request) {
+        Map<String, String> params = new TreeMap<>();
+        request.getParameterMap().forEach((name, values) -> {
+            String value = String.join("&", values).trim();
+            if (!value.isEmpty()) {
+                params.put(name, "location".equals(name) ? value.toLowerCase(Locale.ROOT) : value);
+            }
+        });
+        return request.getRequestURI() + "?" + params;
+    }
+
+    private void write(CachedListing listing, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!response.getHeaders(HttpHeaders.VARY).containsAll(listing.vary())) {
+            listing.vary().forEach(vary -> response.addHeader(HttpHeaders.VARY, vary));
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (new ServletWebRequest(request, response).checkNotModified(listing.etag(), listing.lastModified())) {
+            return;
+        }
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        byte[] body = gzip ? listing.gzip() : listing.identity();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(listing.contentType());
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * True when Accept-Encoding lists gzip or * without q=0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serialized listing with its validators, weighted by the bytes it holds
+     */
+    public record CachedListing(String contentType, String etag, long lastModified, List<String> vary,
+                                byte[] identity, byte[] gzip) {
+        public int weight() {
+            return identity.length + gzip.length;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package edu.eci.arep.taller5.web;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import edu.eci.arep.taller5.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive load shedding of the reads: the overload is the highest of the moving average of the
+ * GET latency over latency-threshold and the requests waiting for a connection (Hikari and the
+ * database bulkhead) over max-waiters. Above 1 that excess is the fraction of GET requests answered
+ * right away with 503 and Retry-After, up to max-shed-ratio so some requests keep measuring the latency.
+ * Writes are never shed, they wait in the bulkhead
+ */
+@Component
+public class LoadSheddingInterceptor implements HandlerInterceptor {
+    private static final String START = LoadSheddingInterceptor.class.getName() + ".START";
+    private static final double ALPHA = 0.1;
+
+    private final boolean enabled;
+    private final double latencyThresholdNanos;
+    private final int maxWaiters;
+    private final double maxShedRatio;
+    private final Duration retryAfter;
+    private final DatabaseBulkheadInterceptor bulkhead;
+    private final ObjectProvider<DataSource> dataSource;
+    private final AtomicLong latencyAverage = new AtomicLong(Double.doubleToLongBits(0));
+    private final Counter shed;
+    private volatile HikariPoolMXBean pool;
+
+    @Autowired
+    public LoadSheddingInterceptor(@Value("${app.load-shedding.enabled:true}") boolean enabled,
+                                   @Value("${app.load-shedding.latency-threshold:500ms}") Duration latencyThreshold,
+                                   @Value("${app.load-shedding.max-waiters:20}") int maxWaiters,
+                                   @Value("${app.load-shedding.max-shed-ratio:0.9}") double maxShedRatio,
+                                   @Value("${app.load-shedding.retry-after:1s}") Duration retryAfter,
+                                   DatabaseBulkheadInterceptor bulkhead,
+                                   ObjectProvider<DataSource> dataSource,
+                                   MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.maxWaiters = maxWaiters;
+        this.maxShedRatio = maxShedRatio;
+        this.retryAfter = retryAfter;
+        this.bulkhead = bulkhead;
+        this.dataSource = dataSource;
+        this.shed = Counter.builder("load.shed.rejected")
+                .description("GET requests rejected with 503 by the load shedding")
+                .register(meterRegistry);
+        Gauge.builder("load.shed.latency", this, i -> i.latencyAverage() / 1e9)
+                .baseUnit("seconds")
+                .description("Moving average of the GET latency used by the load shedding")
+                .register(meterRegistry);
+        Gauge.builder("load.shed.ratio", this, LoadSheddingInterceptor::shedRatio)
+                .description("Fraction of GET requests currently shed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws ServiceUnavailableException for the shed fraction of the GET requests while overloaded
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if(!enabled || request.getDispatcherType() != DispatcherType.REQUEST || !"GET".equals(request.getMethod())){
+            return true;
+        }
+        double ratio = shedRatio();
+        if(ratio > 0 && ThreadLocalRandom.current().nextDouble() < ratio){
+            shed.increment();
+            throw new ServiceUnavailableException("The service is overloaded, retry later", retryAfter);
+        }
+        request.setAttribute(START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if(request.getAttribute(START) instanceof Long start){
+            request.removeAttribute(START);
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the fraction of GET requests to shed, 0 without overload
+     */
+    double shedRatio() {
+        double overload = Math.max(latencyAverage() / latencyThresholdNanos, (double) waiters() / maxWaiters);
+        return overload <= 1 ? 0 : Math.min(maxShedRatio, overload - 1);
+    }
+
+    /**
+     * Exponential moving average of the latency, updated without locks
+     */
+    void record(long latencyNanos) {
+        while (true) {
+            long current = latencyAverage.get();
+            double average = Double.longBitsToDouble(current);
+            double next = average + ALPHA * (latencyNanos - average);
+            if(latencyAverage.compareAndSet(current, Double.doubleToLongBits(next))){
+                return;
+            }
+        }
+    }
+
+    double latencyAverage() {
+        return Double.longBitsToDouble(latencyAverage.get());
+    }
+
+    private int waiters() {
+        HikariPoolMXBean hikari = hikariPool();
+        return bulkhead.waiting() + (hikari == null ? 0 : hikari.getThreadsAwaitingConnection());
+    }
+
+    /**
+     * The pool bean exists once the pool started, it is looked up until then
+     */
+    private HikariPoolMXBean hikariPool() {
+        HikariPoolMXBean current = pool;
+        if(current == null){
+            try {
+                DataSource source = dataSource.getIfAvailable();
+                if(source != null && source.isWrapperFor(HikariDataSource.class)){
+                    current = source.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+                    pool = current;
+                }
+            } catch (SQLException e) {
+                return null;
+            }
+        }
+        return current;
+    }
+}
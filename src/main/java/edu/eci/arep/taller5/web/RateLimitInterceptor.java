@@ -0,0 +1,105 @@
+package edu.eci.arep.taller5.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.eci.arep.taller5.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token bucket in front of the REST controllers, implemented as GCRA (generic cell rate
+ * algorithm): each client only keeps the theoretical arrival time of its next request in an AtomicLong,
+ * a request is accepted when that time is no further than burst requests ahead of now and it is
+ * moved forward by one emission interval with a compare-and-set. No lock is taken, clients never
+ * contend with each other and the buckets of idle clients expire from the cache.
+ * The client is the value of client-header (an API key or a header set by a trusted proxy) or the
+ * remote address without it
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final boolean enabled;
+    private final String clientHeader;
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> buckets;
+    private final Counter rejected;
+
+    @Autowired
+    public RateLimitInterceptor(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                                @Value("${app.rate-limit.requests-per-second:50}") double requestsPerSecond,
+                                @Value("${app.rate-limit.burst:100}") int burst,
+                                @Value("${app.rate-limit.client-header:}") String clientHeader,
+                                @Value("${app.rate-limit.max-clients:100000}") long maxClients,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.emissionIntervalNanos = (long) (1e9 / requestsPerSecond);
+        this.burstNanos = emissionIntervalNanos * burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, Duration.ofSeconds(1).toNanos())))
+                .build();
+        this.rejected = Counter.builder("rate.limit.rejected")
+                .description("Requests rejected with 429 by the per-client rate limit")
+                .register(meterRegistry);
+        Gauge.builder("rate.limit.clients", buckets, Cache::estimatedSize)
+                .description("Clients with a rate limit bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws TooManyRequestsException when the client has no token left, Retry-After is the time until its next one
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if(!enabled || request.getDispatcherType() != DispatcherType.REQUEST){
+            return true;
+        }
+        long wait = acquire(client(request), System.nanoTime());
+        if(wait > 0){
+            rejected.increment();
+            throw new TooManyRequestsException("Too many requests, retry later", Duration.ofNanos(wait));
+        }
+        return true;
+    }
+
+    /**
+     * @return 0 when the request is accepted, otherwise the nanoseconds until the client has a token again
+     */
+    long acquire(String client, long now) {
+        AtomicLong theoreticalArrival = buckets.get(client, c -> new AtomicLong(now));
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long ahead = next - now;
+            if(ahead > burstNanos){
+                return ahead - burstNanos;
+            }
+            if(theoreticalArrival.compareAndSet(current, next)){
+                return 0;
+            }
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        if(!clientHeader.isEmpty()){
+            String value = request.getHeader(clientHeader);
+            if(value != null && !value.isBlank()){
+                int comma = value.indexOf(',');
+                return (comma < 0 ? value : value.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
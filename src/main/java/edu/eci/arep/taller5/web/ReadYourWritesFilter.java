@@ -0,0 +1,83 @@
+package edu.eci.arep.taller5.web;
+
+import edu.eci.arep.taller5.config.ReplicaRoutingDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Binds the client of each request to the replica routing, so only the client that wrote reads from the
+ * primary after its write. The time of its last write is kept in the LAST_WRITE_COOKIE cookie, set by
+ * the write and valid while the replicas may still miss it.
+ * It runs before the listing cache, which must know whether the reads of the request may miss a write
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String LAST_WRITE_COOKIE = "last-write";
+
+    private final ReplicaRoutingDataSource routing;
+
+    @Autowired
+    public ReadYourWritesFilter(ReplicaRoutingDataSource routing) {
+        this.routing = routing;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        routing.bindClient(lastWrite(request), millis -> {
+            if(!response.isCommitted()){
+                response.addHeader(HttpHeaders.SET_COOKIE, cookie(millis));
+            }
+        });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unbindClient();
+        }
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        if(request.getCookies() == null){
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if(LAST_WRITE_COOKIE.equals(cookie.getName())){
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException ignored) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The cookie expires with the window, after it the client reads from the replicas again
+     */
+    private String cookie(long millis) {
+        Duration window = routing.primaryAfterWrite();
+        return ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(millis))
+                .path("/")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .maxAge(window.plusSeconds(1))
+                .build().toString();
+    }
+}
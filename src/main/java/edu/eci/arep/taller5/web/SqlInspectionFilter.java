@@ -0,0 +1,152 @@
+package edu.eci.arep.taller5.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Counts the SQL statements each request sends to the database (N+1 detector), the statements are
+ * reported by the proxy of the DataSource (SqlInspectionConfig). A request over the statement budget
+ * or whose statements took longer than max-time is logged with every statement, its bind parameters,
+ * elapsed time and the application method that issued it.
+ * The counts stay in the request attribute STATEMENTS_ATTRIBUTE so tests can assert them per endpoint.
+ * Only statements of the request thread are counted, the write queue and async exports run elsewhere
+ */
+@Component
+public class SqlInspectionFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_ATTRIBUTE = SqlInspectionFilter.class.getName() + ".STATEMENTS";
+    private static final Logger log = LoggerFactory.getLogger(SqlInspectionFilter.class);
+    private static final ThreadLocal<RequestStatements> CURRENT = new ThreadLocal<>();
+    private static final int MAX_LOGGED_STATEMENTS = 50;
+
+    private final int maxStatements;
+    private final long maxTimeMillis;
+
+    @Autowired
+    public SqlInspectionFilter(@Value("${app.sql-inspection.max-statements:5}") int maxStatements,
+                               @Value("${app.sql-inspection.max-time:200ms}") Duration maxTime) {
+        this.maxStatements = maxStatements;
+        this.maxTimeMillis = maxTime.toMillis();
+    }
+
+    /**
+     * Statement executed by the DataSource, only kept when the current thread is serving a request
+     * @param sql the statement as sent to the driver
+     * @param parameters the bind parameters, already formatted
+     * @param elapsedMillis execution time of the statement
+     */
+    public static void record(String sql, String parameters, long elapsedMillis) {
+        RequestStatements statements = CURRENT.get();
+        if(statements != null){
+            statements.add(sql, parameters, elapsedMillis);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestStatements statements = new RequestStatements();
+        RequestStatements outer = CURRENT.get();
+        CURRENT.set(statements);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if(outer == null){
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+            request.setAttribute(STATEMENTS_ATTRIBUTE, statements);
+            if(statements.count() > maxStatements || statements.elapsedMillis() > maxTimeMillis){
+                log.warn("{} {} issued {} SQL statements in {} ms (budget {} statements, {} ms){}",
+                        request.getMethod(), requestLine(request), statements.count(), statements.elapsedMillis(),
+                        maxStatements, maxTimeMillis, statements.describe());
+            }
+        }
+    }
+
+    private static String requestLine(HttpServletRequest request) {
+        return request.getQueryString() == null ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString();
+    }
+
+    /**
+     * The statements of one request
+     */
+    public static final class RequestStatements {
+        private final List<Statement> statements = new ArrayList<>();
+        private int count;
+        private long elapsedMillis;
+
+        /**
+         * @param sql statement sent to the database
+         * @param parameters bind parameters
+         * @param elapsedMillis execution time
+         * @param caller application method that ran it (Class.method:line)
+         */
+        public record Statement(String sql, String parameters, long elapsedMillis, String caller) {}
+
+        synchronized void add(String sql, String parameters, long elapsed) {
+            count++;
+            elapsedMillis += elapsed;
+            if(statements.size() < MAX_LOGGED_STATEMENTS){
+                statements.add(new Statement(sql, parameters, elapsed, caller()));
+            }
+        }
+
+        public synchronized int count() {
+            return count;
+        }
+
+        public synchronized long elapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the first statements of the request, at most 50
+         */
+        public synchronized List<Statement> statements() {
+            return List.copyOf(statements);
+        }
+
+        private synchronized String describe() {
+            StringBuilder text = new StringBuilder();
+            for (Statement statement : statements()) {
+                text.append(System.lineSeparator()).append("  ").append(statement.elapsedMillis()).append(" ms ")
+                        .append(statement.caller()).append(": ").append(statement.sql())
+                        .append(" ").append(statement.parameters());
+            }
+            if(count > MAX_LOGGED_STATEMENTS){
+                text.append(System.lineSeparator()).append("  ... ").append(count - MAX_LOGGED_STATEMENTS).append(" more");
+            }
+            return text.toString();
+        }
+
+        /**
+         * First frame of the application outside of the web and config packages, it is the repository
+         * default method or the service method that ran the query
+         */
+        private static String caller() {
+            Optional<StackWalker.StackFrame> frame = StackWalker.getInstance().walk(frames -> frames
+                    .filter(f -> f.getClassName().startsWith("edu.eci.arep.taller5.")
+                            && !f.getClassName().startsWith("edu.eci.arep.taller5.web.")
+                            && !f.getClassName().startsWith("edu.eci.arep.taller5.config."))
+                    .findFirst());
+            return frame.map(f -> f.getClassName().substring(f.getClassName().lastIndexOf('.') + 1)
+                    + "." + f.getMethodName() + ":" + f.getLineNumber()).orElse("unknown");
+        }
+    }
+}
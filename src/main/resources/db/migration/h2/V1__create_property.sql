@@ -0,0 +1,20 @@
+-- Ids are taken from the sequence in blocks of 50 (allocationSize of Property)
+CREATE SEQUENCE property_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE property (
+    id            BIGINT NOT NULL,
+    address       VARCHAR(255),
+    address_lower VARCHAR(255),
+    price         DOUBLE PRECISION,
+    size          DOUBLE PRECISION,
+    description   VARCHAR(255),
+    version       BIGINT,
+    updated_at    TIMESTAMP(6) WITH TIME ZONE,
+    PRIMARY KEY (id)
+);
+
+-- Range filters and keyset pages sort by (price, id) and (size, id)
+CREATE INDEX idx_property_price ON property (price, id);
+CREATE INDEX idx_property_size ON property (size, id);
+-- Prefix matches on the lower-cased address
+CREATE INDEX idx_property_address_lower ON property (address_lower);
@@ -0,0 +1,4 @@
+-- Price per square meter kept by the entity on every write, stored to filter it with an index
+ALTER TABLE property ADD COLUMN price_per_m2 DOUBLE PRECISION;
+UPDATE property SET price_per_m2 = price / size WHERE size > 0;
+CREATE INDEX idx_property_price_per_m2 ON property (price_per_m2, id);
@@ -0,0 +1,23 @@
+-- MySQL has no sequences, Hibernate emulates property_seq with a one-row table
+CREATE TABLE property_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+INSERT INTO property_seq VALUES (1);
+
+CREATE TABLE property (
+    id            BIGINT NOT NULL,
+    address       VARCHAR(255),
+    address_lower VARCHAR(255),
+    price         DOUBLE,
+    size          DOUBLE,
+    description   VARCHAR(255),
+    version       BIGINT,
+    updated_at    DATETIME(6),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+-- Range filters and keyset pages sort by (price, id) and (size, id)
+CREATE INDEX idx_property_price ON property (price, id);
+CREATE INDEX idx_property_size ON property (size, id);
+-- Prefix matches on the lower-cased address
+CREATE INDEX idx_property_address_lower ON property (address_lower);
@@ -0,0 +1,6 @@
+-- Heartbeat written on the primary by the replica routing, its age on each replica is the replication lag
+CREATE TABLE replica_heartbeat (
+    id INT NOT NULL PRIMARY KEY,
+    beat_millis BIGINT NOT NULL
+) ENGINE=InnoDB;
+INSERT INTO replica_heartbeat (id, beat_millis) VALUES (1, 0);
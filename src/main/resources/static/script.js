@@ -1,5 +1,7 @@
 let currentPage = 0;
 const itemsPerPage = 2;
+// The list clamps descriptions to two lines, no need to download the whole text
+const listDescriptionLength = 200;
 let totalItems = 0;
 
 // DOM elements
@@ -54,7 +56,7 @@ propertyForm.addEventListener('submit', async function(e) {
 
 // Render properties list
 async function renderProperties() {
-    let api = `/properties?page=${currentPage}&size=${itemsPerPage}`;
+    let api = `/properties/summary?page=${currentPage}&size=${itemsPerPage}&descriptionLength=${listDescriptionLength}`;
     if(searchLocation.value){
         api += `&location=${encodeURIComponent(searchLocation.value)}`;
     }
@@ -302,6 +304,18 @@ search.addEventListener('click', function() {
     currentPage = 0; 
     renderProperties();
 });
+// Changes made by other clients: the feed says when the listing changed, several changes
+// close together are rendered once
+let changesRender = null;
+function scheduleRender() {
+    clearTimeout(changesRender);
+    changesRender = setTimeout(renderProperties, 250);
+}
+if (window.EventSource) {
+    const changes = new EventSource('/properties/changes');
+    changes.addEventListener('property', scheduleRender);
+    changes.addEventListener('reset', scheduleRender);
+}
 // Initialize
 renderProperties();
 
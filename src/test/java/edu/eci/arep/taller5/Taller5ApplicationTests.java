@@ -1,32 +1,107 @@
 package edu.eci.arep.taller5;
 
+import edu.eci.arep.taller5.config.ReplicaRoutingDataSource;
+import edu.eci.arep.taller5.config.RepositoryRowsMetrics;
+import edu.eci.arep.taller5.controller.ErrorHandler;
 import edu.eci.arep.taller5.exception.BadRequestException;
 import edu.eci.arep.taller5.exception.NotFoundException;
+import edu.eci.arep.taller5.exception.PreconditionFailedException;
+import edu.eci.arep.taller5.exception.ServiceUnavailableException;
+import edu.eci.arep.taller5.exception.TooManyRequestsException;
 import edu.eci.arep.taller5.model.DTO.PropertyDTO;
 import edu.eci.arep.taller5.model.Property;
 import edu.eci.arep.taller5.repository.PropertyRepository;
+import edu.eci.arep.taller5.model.PropertyAddress;
+import edu.eci.arep.taller5.model.PropertyChangedEvent;
+import edu.eci.arep.taller5.model.PropertyColumns;
+import edu.eci.arep.taller5.model.PropertyFilter;
 import edu.eci.arep.taller5.service.Imp.PropertyServiceImp;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import edu.eci.arep.taller5.service.PropertyExportService;
+import edu.eci.arep.taller5.service.PropertyService;
+import edu.eci.arep.taller5.service.PropertyWriteQueue;
+import edu.eci.arep.taller5.service.catalog.CatalogVersion;
+import edu.eci.arep.taller5.service.index.AddressTrigramIndex;
+import edu.eci.arep.taller5.service.snapshot.PropertyColumnSnapshot;
+import edu.eci.arep.taller5.web.DatabaseBulkheadInterceptor;
+import edu.eci.arep.taller5.web.ListingResponseCacheFilter;
+import edu.eci.arep.taller5.web.LoadSheddingInterceptor;
+import edu.eci.arep.taller5.web.RateLimitInterceptor;
+import edu.eci.arep.taller5.web.SqlInspectionFilter;
+import jakarta.servlet.FilterChain;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.ApplicationEventPublisher;
+import edu.eci.arep.taller5.mapper.CursorMapper;
+import edu.eci.arep.taller5.model.DTO.BatchItemResultDTO;
+import edu.eci.arep.taller5.model.DTO.CursorPageDTO;
+import edu.eci.arep.taller5.model.DTO.ImportReportDTO;
+import edu.eci.arep.taller5.model.DTO.PageDTO;
+import edu.eci.arep.taller5.model.DTO.PropertyStatsDTO;
+import edu.eci.arep.taller5.model.DTO.PropertySummaryDTO;
+import edu.eci.arep.taller5.model.DTO.WriteTicketDTO;
+import edu.eci.arep.taller5.model.PropertyCursor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 @ActiveProfiles("test")
 @ExtendWith(MockitoExtension.class)
 class Taller5ApplicationTests {
@@ -34,10 +109,54 @@ class Taller5ApplicationTests {
 	@Mock
 	private PropertyRepository propertyRepository;
 
+	@Mock
+	private AddressTrigramIndex addressIndex;
+
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+
+	@Mock
+	private PropertyColumnSnapshot columnSnapshot;
+
 
 	@InjectMocks
 	private PropertyServiceImp propertyServiceImp;
 
+	@Autowired
+	private PropertyBatchService propertyBatchService;
+
+	@Autowired
+	private PropertyExportService propertyExportService;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+	@Autowired
+	private AddressTrigramIndex trigramIndex;
+
+	@Autowired
+	private ListingResponseCacheFilter listingResponseCacheFilter;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PropertyRepository repository;
+
+	@Autowired
+	private PropertyService propertyService;
+
+	@Autowired
+	private PropertyWriteQueue propertyWriteQueue;
+
+	@Autowired
+	private ErrorHandler errorHandler;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private MockMvc mockMvc;
+
 
 	private Property testProperty;
 	private PropertyDTO testPropertyDTO;
@@ -122,19 +241,23 @@ class Taller5ApplicationTests {
 		Double price = 30000.0;
 		Double sizeProperty = 300.0;
 		Pageable pageable = PageRequest.of(0, 5);
+		Pageable byId = PageRequest.of(0, 5, Sort.by("id"));
+		PropertyFilter filter = PropertyFilter.of("test address", price, sizeProperty);
 
 		List<Property> properties = Arrays.asList(testProperty);
-		Page<Property> propertyPage = new PageImpl<>(properties, pageable, 1);
-		when(propertyRepository.findAllByFilter(location, price, sizeProperty, pageable))
-				.thenReturn(propertyPage);
-		Page<Property> result = propertyServiceImp.getPaginatedProperties(location, price, sizeProperty, pageable);
+		Slice<Property> propertySlice = new SliceImpl<>(properties, byId, false);
+		when(propertyRepository.findSliceByFilter(filter, null, byId))
+				.thenReturn(propertySlice);
+		Page<Property> result = propertyServiceImp.getPaginatedProperties(
+				PropertyFilter.of(location, price, sizeProperty), pageable);
 		assertNotNull(result);
 		assertEquals(1, result.getTotalElements());
 		assertEquals(1, result.getContent().size());
 		assertEquals(testProperty.getId(), result.getContent().get(0).getId());
 		assertEquals(testProperty.getAddress(), result.getContent().get(0).getAddress());
 
-		verify(propertyRepository, times(1)).findAllByFilter(location, price, sizeProperty, pageable);
+		verify(propertyRepository, times(1)).findSliceByFilter(filter, null, byId);
+		verify(propertyRepository, never()).countByFilter(any(), any());
 	}
 
 	// Test 6: Test to update a property (successful case)
@@ -147,24 +270,20 @@ class Taller5ApplicationTests {
 		updateProperty.setPrice(250000.0);
 		updateProperty.setSize(180.0);
 
-		Property savedProperty = new Property();
-		savedProperty.setId(propertyId);
-		savedProperty.setAddress("Updated Location");
-		savedProperty.setPrice(250000.0);
-		savedProperty.setSize(180.0);
-
-		when(propertyRepository.existsById(propertyId)).thenReturn(true);
-		when(propertyRepository.save(updateProperty)).thenReturn(savedProperty);
+		when(propertyRepository.updateAndGetVersion(propertyId, updateProperty)).thenReturn(Optional.of(4L));
 
-		Property result = propertyServiceImp.update(propertyId, updateProperty);
+		Property result = propertyServiceImp.update(propertyId, updateProperty, null);
 		assertNotNull(result);
 		assertEquals(propertyId, result.getId());
+		assertEquals(4L, result.getVersion());
 		assertEquals("Updated Location", result.getAddress());
+		assertEquals("updated location", result.getAddressLower());
 		assertEquals(250000.0, result.getPrice());
 		assertEquals(180.0, result.getSize());
 
-		verify(propertyRepository, times(1)).existsById(propertyId);
-		verify(propertyRepository, times(1)).save(updateProperty);
+		verify(propertyRepository, times(1)).updateAndGetVersion(propertyId, updateProperty);
+		verify(propertyRepository, never()).findById(any(Long.class));
+		verify(propertyRepository, never()).findVersionById(any(Long.class));
 	}
 
 	// Test 7: Test to update property that does not exist (error case)
@@ -175,15 +294,15 @@ class Taller5ApplicationTests {
 		updateProperty.setId(propertyId);
 		updateProperty.setAddress("Updated Location");
 
-		when(propertyRepository.existsById(propertyId)).thenReturn(false);
+		when(propertyRepository.updateAndGetVersion(propertyId, updateProperty)).thenReturn(Optional.empty());
 
 		NotFoundException exception = assertThrows(NotFoundException.class,
-				() -> propertyServiceImp.update(propertyId, updateProperty));
+				() -> propertyServiceImp.update(propertyId, updateProperty, null));
 
 		assertEquals("Property not found with id " + propertyId, exception.getMessage());
 
-		verify(propertyRepository, times(1)).existsById(propertyId);
-		verify(propertyRepository, never()).save(any(Property.class));
+		verify(propertyRepository, times(1)).updateAndGetVersion(propertyId, updateProperty);
+		verify(propertyRepository, never()).findVersionById(any(Long.class));
 	}
 
 	// Test 8: Test to update property with inconsistent ID (error case)
@@ -195,39 +314,932 @@ class Taller5ApplicationTests {
 		updateProperty.setId(propertyId);
 		updateProperty.setAddress("Updated Location");
 		BadRequestException exception = assertThrows(BadRequestException.class,
-				() -> propertyServiceImp.update(pathId, updateProperty));
+				() -> propertyServiceImp.update(pathId, updateProperty, null));
 
 		assertEquals("The id property is not equals to param id", exception.getMessage());
 
-		verify(propertyRepository, never()).existsById(any(Long.class));
-		verify(propertyRepository, never()).save(any(Property.class));
+		verify(propertyRepository, never()).updateById(any(), any(), any());
+		verify(propertyRepository, never()).updateAndGetVersion(any(), any());
 	}
 
 	// Test 9: Test to delete a property (successful case)
 	@Test
 	void testDeleteProperty_Success() {
 		Long propertyId = 1L;
-		when(propertyRepository.existsById(propertyId)).thenReturn(true);
-		doNothing().when(propertyRepository).deleteById(propertyId);
+		when(propertyRepository.deleteByIdAndVersion(propertyId, null)).thenReturn(1);
 
-		assertDoesNotThrow(() -> propertyServiceImp.delete(propertyId));
-		verify(propertyRepository, times(1)).existsById(propertyId);
-		verify(propertyRepository, times(1)).deleteById(propertyId);
+		assertDoesNotThrow(() -> propertyServiceImp.delete(propertyId, null));
+		verify(propertyRepository, times(1)).deleteByIdAndVersion(propertyId, null);
+		verify(propertyRepository, never()).findVersionById(any(Long.class));
 	}
 
 	// Test 10: Test to delete property that does not exist (error case)
 	@Test
 	void testDeleteProperty_NotFound() {
 		Long propertyId = 999L;
-		when(propertyRepository.existsById(propertyId)).thenReturn(false);
+		when(propertyRepository.deleteByIdAndVersion(propertyId, 3L)).thenReturn(0);
+		when(propertyRepository.findVersionById(propertyId)).thenReturn(Optional.empty());
 
 		NotFoundException exception = assertThrows(NotFoundException.class,
-				() -> propertyServiceImp.delete(propertyId));
+				() -> propertyServiceImp.delete(propertyId, 3L));
 
 		assertEquals("Property not found with id " + propertyId, exception.getMessage());
 
-		verify(propertyRepository, times(1)).existsById(propertyId);
-		verify(propertyRepository, never()).deleteById(any(Long.class));
+		verify(propertyRepository, times(1)).deleteByIdAndVersion(propertyId, 3L);
+		verify(propertyRepository, times(1)).findVersionById(propertyId);
+	}
+
+	// Test 11: Test to get the first keyset page, it returns the cursor of the next page
+	@Test
+	void testGetPropertiesAfter_FirstPage() {
+		Property second = new Property(2L, "Second Location", 200000.0, 80.0, null);
+		when(propertyRepository.findNextByPrice(PropertyFilter.NONE, null, -Double.MAX_VALUE, Long.MIN_VALUE, Limit.of(2)))
+				.thenReturn(Arrays.asList(testProperty, second));
+
+		CursorPageDTO<Property> result = propertyServiceImp.getPropertiesAfter(PropertyFilter.NONE, "price", null, 1);
+
+		assertEquals(1, result.getContent().size());
+		assertEquals(testProperty.getId(), result.getContent().get(0).getId());
+		PropertyCursor next = CursorMapper.toCursor(result.getNextCursor());
+		assertEquals("price", next.getSortKey());
+		assertEquals(testProperty.getPrice(), next.getValue());
+		assertEquals(testProperty.getId(), next.getId());
+	}
+
+	// Test 12: Test to get the last keyset page, it does not return a cursor
+	@Test
+	void testGetPropertiesAfter_LastPage() {
+		String after = CursorMapper.toToken(new PropertyCursor("id", 1.0, 1L));
+		when(propertyRepository.findNextById(PropertyFilter.NONE, null, 1L, Limit.of(6)))
+				.thenReturn(List.of(testProperty));
+
+		CursorPageDTO<Property> result = propertyServiceImp.getPropertiesAfter(PropertyFilter.NONE, "id", after, 5);
+
+		assertEquals(1, result.getContent().size());
+		assertNull(result.getNextCursor());
+	}
+
+	// Test 13: Test to get a keyset page with a cursor of another sort (error case)
+	@Test
+	void testGetPropertiesAfter_InvalidCursor() {
+		String after = CursorMapper.toToken(new PropertyCursor("size", 10.0, 1L));
+		assertThrows(BadRequestException.class,
+				() -> propertyServiceImp.getPropertiesAfter(PropertyFilter.NONE, "price", after, 5));
+		assertThrows(BadRequestException.class,
+				() -> propertyServiceImp.getPropertiesAfter(PropertyFilter.NONE, "price", "not-a-cursor", 5));
+		verify(propertyRepository, never()).findNextByPrice(any(), any(), any(), any(), any());
+	}
+
+	// Test 14: Test to get a full page, the total elements come from the count query
+	@Test
+	void testGetPaginatedProperties_CountsFullPage() {
+		Pageable pageable = PageRequest.of(0, 1, Sort.by("id"));
+		PropertyFilter filter = PropertyFilter.of("test", null, null);
+		when(propertyRepository.findSliceByFilter(filter, null, pageable))
+				.thenReturn(new SliceImpl<>(List.of(testProperty), pageable, true));
+		when(propertyRepository.countByFilter(filter, null)).thenReturn(7L);
+
+		Page<Property> result = propertyServiceImp.getPaginatedProperties(PropertyFilter.of("  Test ", null, null), pageable);
+
+		assertEquals(7, result.getTotalElements());
+		assertEquals(7, result.getTotalPages());
+		verify(propertyRepository, times(1)).countByFilter(filter, null);
+	}
+
+	// Test 15: Test to get a slice of properties, the total elements are not counted
+	@Test
+	void testGetSlicedProperties_SkipsCount() {
+		Pageable pageable = PageRequest.of(0, 1, Sort.by("id"));
+		when(propertyRepository.findSliceByFilter(PropertyFilter.of(null, 100.0, null), null, pageable))
+				.thenReturn(new SliceImpl<>(List.of(testProperty), pageable, true));
+
+		Slice<Property> result = propertyServiceImp.getSlicedProperties(PropertyFilter.of(" ", 100.0, null), pageable);
+
+		assertTrue(result.hasNext());
+		assertEquals(1, result.getContent().size());
+		verify(propertyRepository, never()).countByFilter(any(), any());
+	}
+
+	// Test 16: Test to filter by location using the ids returned by the address index
+	@Test
+	void testGetPaginatedProperties_UsesAddressIndex() {
+		Pageable pageable = PageRequest.of(0, 5, Sort.by("id"));
+		PropertyFilter filter = PropertyFilter.of("test", null, null);
+		when(addressIndex.candidates("test")).thenReturn(Optional.of(List.of(1L)));
+		when(propertyRepository.findSliceByFilter(filter, List.of(1L), pageable))
+				.thenReturn(new SliceImpl<>(List.of(testProperty), pageable, false));
+
+		Page<Property> result = propertyServiceImp.getPaginatedProperties(PropertyFilter.of("Test", null, null), pageable);
+
+		assertEquals(1, result.getTotalElements());
+		verify(propertyRepository, never()).findSliceByFilter(any(), isNull(), any());
+
+		when(addressIndex.candidates("nowhere")).thenReturn(Optional.of(List.of()));
+		assertTrue(propertyServiceImp.getPaginatedProperties(PropertyFilter.of("nowhere", null, null), pageable).isEmpty());
+	}
+
+	// Test 17: Test the address index is built from the repository and kept in sync with the writes
+	@Test
+	void testAddressTrigramIndex() {
+		PropertyAddress row = mock(PropertyAddress.class);
+		when(row.getId()).thenReturn(1L);
+		when(row.getAddress()).thenReturn("Calle 80 #12-30 Bogota");
+		PropertyAddress movedRow = mock(PropertyAddress.class);
+		when(movedRow.getId()).thenReturn(3L);
+		lenient().when(movedRow.getAddress()).thenReturn("Calle 1 Pasto");
+		PropertyAddress deletedRow = mock(PropertyAddress.class);
+		when(deletedRow.getId()).thenReturn(4L);
+		lenient().when(deletedRow.getAddress()).thenReturn("Calle 2 Neiva");
+		when(propertyRepository.findAddressesAfter(Long.MIN_VALUE, Limit.of(10_000))).thenReturn(List.of(row, movedRow, deletedRow));
+		AddressTrigramIndex index = new AddressTrigramIndex(propertyRepository, 1000, new SimpleMeterRegistry());
+		assertEquals(Optional.empty(), index.candidates("bogota"));
+
+		// Changed before the build reads their rows, the build must not put the old addresses back
+		index.onPropertyChanged(PropertyChangedEvent.updated(new Property(3L, "Calle 1 Tunja", 1.0, 1.0, null)));
+		index.onPropertyChanged(PropertyChangedEvent.deleted(4L));
+		index.build();
+		assertEquals(List.of(), index.candidates("pasto").orElseThrow());
+		assertEquals(List.of(3L), index.candidates("tunja").orElseThrow());
+		assertEquals(List.of(), index.candidates("neiva").orElseThrow());
+		index.onPropertyChanged(PropertyChangedEvent.deleted(3L));
+		index.onPropertyChanged(PropertyChangedEvent.created(new Property(2L, "Carrera 7 Bogota", 1.0, 1.0, null)));
+
+		assertEquals(List.of(1L, 2L), index.candidates("bogota").orElseThrow());
+		assertEquals(List.of(1L), index.candidates("80 #12").orElseThrow());
+		assertEquals(List.of(), index.candidates("medellin").orElseThrow());
+		assertEquals(Optional.empty(), index.candidates("bo"));
+
+		index.onPropertyChanged(PropertyChangedEvent.updated(new Property(2L, "Carrera 7 Cali", 1.0, 1.0, null)));
+		index.onPropertyChanged(PropertyChangedEvent.deleted(1L));
+		assertEquals(List.of(), index.candidates("bogota").orElseThrow());
+		assertEquals(List.of(2L), index.candidates("cali").orElseThrow());
+		assertTrue(index.estimatedBytes() > 0);
+	}
+
+	// Test 18: Test to create, update and delete properties in batches with per-item results
+	@Test
+	void testBatchWrites() {
+		PropertyDTO invalid = new PropertyDTO();
+		invalid.setPrice(-1.0);
+		List<BatchItemResultDTO> created = propertyBatchService.createAll(List.of(testPropertyDTO, invalid));
+		assertEquals(201, created.get(0).getStatus());
+		assertNotNull(created.get(0).getId());
+		assertEquals(400, created.get(1).getStatus());
+		assertEquals("Validation Failed", created.get(1).getError().getDetail());
+
+		PropertyDTO update = new PropertyDTO();
+		update.setId(created.get(0).getId());
+		update.setAddress("Updated Location");
+		update.setPrice(1.0);
+		update.setSize(1.0);
+		PropertyDTO missing = new PropertyDTO();
+		missing.setId(-1L);
+		missing.setAddress("Missing");
+		missing.setPrice(1.0);
+		missing.setSize(1.0);
+		List<BatchItemResultDTO> updated = propertyBatchService.updateAll(List.of(update, missing));
+		assertEquals(200, updated.get(0).getStatus());
+		assertEquals(404, updated.get(1).getStatus());
+		assertEquals("Property not found with id -1", updated.get(1).getError().getDetail());
+
+		List<BatchItemResultDTO> deleted = propertyBatchService.deleteAll(List.of(created.get(0).getId(), -1L));
+		assertEquals(204, deleted.get(0).getStatus());
+		assertEquals(404, deleted.get(1).getStatus());
+		assertThrows(BadRequestException.class, () -> propertyBatchService.deleteAll(List.of()));
+
+		// A row rejected by the database only fails its own item, without the text of the SQL error
+		PropertyDTO tooLong = new PropertyDTO();
+		tooLong.setAddress("Too long description");
+		tooLong.setPrice(1.0);
+		tooLong.setSize(1.0);
+		tooLong.setDescription("x".repeat(300));
+		List<BatchItemResultDTO> mixed = propertyBatchService.createAll(List.of(testPropertyDTO, tooLong));
+		assertEquals(201, mixed.get(0).getStatus());
+		assertTrue(repository.existsById(mixed.get(0).getId()));
+		assertEquals(409, mixed.get(1).getStatus());
+		assertEquals("The property violates a constraint of the database", mixed.get(1).getError().getDetail());
+	}
+
+	// Test 19: Test to import a NDJSON feed, the invalid lines are rejected and reported
+	@Test
+	void testImportProperties() throws IOException {
+		String feed = """
+				{"address":"Imported 1","price":10,"size":20}
+				{"address":"Imported 2","price":-5,"size":20}
+
+				not json
+				{"address":"Imported 3","price":30,"size":40,"description":"ok"}
+				""";
+		ImportReportDTO report = propertyBatchService.importProperties(
+				new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), "application/x-ndjson");
+
+		assertEquals(2, report.getImported());
+		assertEquals(2, report.getRejected());
+		assertEquals(2, report.getRejectedLines().get(0).getLine());
+		assertEquals(4, report.getRejectedLines().get(1).getLine());
+		assertThrows(BadRequestException.class, () -> propertyBatchService.importProperties(
+				new ByteArrayInputStream(new byte[0]), "application/xml"));
+	}
+
+	// Test 20: Test to export the filtered catalog as CSV
+	@Test
+	void testExportProperties() throws IOException {
+		PropertyDTO exported = new PropertyDTO();
+		exported.setAddress("Exported, \"quoted\" address");
+		exported.setPrice(123.0);
+		exported.setSize(45.0);
+		Long id = propertyBatchService.createAll(List.of(exported)).get(0).getId();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		propertyExportService.export(PropertyFilter.of("  EXPORTED, \"quoted ", null, null), "csv", out);
+
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(2, lines.length);
+		assertEquals("id,address,price,size,description", lines[0]);
+		assertEquals(id + ",\"Exported, \"\"quoted\"\" address\",123.0,45.0,", lines[1]);
+		assertThrows(BadRequestException.class, () -> propertyExportService.mediaType("xml"));
+
+		// % and _ of the location are matched literally by the export and the keyset pages
+		PropertyDTO percent = new PropertyDTO();
+		percent.setAddress("Calle 100% Exported");
+		percent.setPrice(10.0);
+		percent.setSize(10.0);
+		PropertyDTO digits = new PropertyDTO();
+		digits.setAddress("Calle 1000 Exported");
+		digits.setPrice(10.0);
+		digits.setSize(10.0);
+		Long percentId = propertyBatchService.createAll(List.of(percent, digits)).get(0).getId();
+		out.reset();
+		propertyExportService.export(PropertyFilter.of(" 100% exported", null, null), "csv", out);
+		lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[1].startsWith(percentId + ","));
+		List<Property> page = propertyService.getPropertiesAfter(PropertyFilter.of("0% EXP", 5.0, null), "price", null, 10)
+				.getContent();
+		assertEquals(List.of(percentId), page.stream().map(Property::getId).toList());
+	}
+
+	// Test 21: Test to get the compact listing with truncated descriptions
+	@Test
+	void testGetPropertySummaries() {
+		Pageable pageable = PageRequest.of(0, 2, Sort.by("id"));
+		List<PropertySummaryDTO> rows = List.of(new PropertySummaryDTO(1L, "Address 1", 100.0, 50.0, "Descr"));
+		when(addressIndex.candidates(null)).thenReturn(Optional.empty());
+		when(propertyRepository.findSummariesByFilter(PropertyFilter.NONE, null, 5, pageable))
+				.thenReturn(new SliceImpl<>(rows, pageable, false));
+
+		PageDTO<PropertySummaryDTO> result = propertyServiceImp.getPropertySummaries(PropertyFilter.NONE, 5, pageable);
+
+		assertEquals(1, result.getTotalElements());
+		assertEquals(1, result.getTotalPages());
+		assertEquals("Descr", result.getContent().get(0).getDescription());
+		verify(propertyRepository, never()).countByFilter(any(), any());
+		assertThrows(BadRequestException.class, () -> propertyServiceImp.getPropertySummaries(PropertyFilter.NONE, -1, pageable));
+	}
+
+	// Test 22: Test that every write bumps the catalog ETag used by the listing validators
+	@Test
+	void testCatalogVersionChangesOnWrite() {
+		PropertyDTO created = new PropertyDTO();
+		created.setAddress("Versioned address");
+		created.setPrice(10.0);
+		created.setSize(20.0);
+		String before = catalogVersion.etag();
+
+		propertyBatchService.createAll(List.of(created));
+
+		assertNotEquals(before, catalogVersion.etag());
+		assertTrue(catalogVersion.etag().startsWith("\"catalog-"));
+		assertFalse(catalogVersion.lastModified().isAfter(Instant.now()));
+	}
+
+	// Test 23: Test that equivalent listing requests are served from the gzip pre-encoded response cache
+	@Test
+	void testListingResponseCache() throws Exception {
+		String json = "{\"content\":[],\"page\":0}";
+		AtomicInteger calls = new AtomicInteger();
+		FilterChain chain = (req, res) -> {
+			calls.incrementAndGet();
+			res.setContentType("application/json");
+			res.getWriter().write(json);
+		};
+		MockHttpServletRequest first = new MockHttpServletRequest("GET", "/properties/summary");
+		first.setParameter("location", " Park ");
+		listingResponseCacheFilter.doFilter(first, new MockHttpServletResponse(), chain);
+
+		MockHttpServletRequest second = new MockHttpServletRequest("GET", "/properties/summary");
+		second.setParameter("location", "park");
+		second.addHeader("Accept-Encoding", "br;q=1.0, gzip;q=0.8");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		listingResponseCacheFilter.doFilter(second, response, chain);
+
+		assertEquals(1, calls.get());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+			assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	// Test 24: Test that the range filters, keyset pages and address prefixes use the migration indexes
+	@Test
+	void testFilterQueriesUseIndexes() {
+		assertTrue(explain("SELECT * FROM property WHERE price >= 100 ORDER BY price, id LIMIT 20")
+				.contains("idx_property_price"));
+		assertTrue(explain("SELECT * FROM property WHERE (price, id) > (100, 5) ORDER BY price, id LIMIT 20")
+				.contains("idx_property_price"));
+		assertTrue(explain("SELECT * FROM property WHERE size >= 50 ORDER BY size, id LIMIT 20")
+				.contains("idx_property_size"));
+		assertTrue(explain("SELECT * FROM property WHERE address_lower LIKE 'calle 1%'")
+				.contains("idx_property_address_lower"));
+	}
+
+	private String explain(String query) {
+		return jdbcTemplate.queryForObject("EXPLAIN " + query, String.class).toLowerCase();
+	}
+
+	// Test 25: Test the price per m2 range and the multi-field sort of the specification listing
+	@Test
+	void testGetPaginatedProperties_SpecificationFilters() {
+		List<PropertyDTO> properties = new ArrayList<>();
+		double[][] values = {{100.0, 10.0}, {200.0, 10.0}, {300.0, 30.0}};
+		for (double[] value : values) {
+			PropertyDTO dto = new PropertyDTO();
+			dto.setAddress("Spec filter " + value[0]);
+			dto.setPrice(value[0]);
+			dto.setSize(value[1]);
+			properties.add(dto);
+		}
+		propertyBatchService.createAll(properties);
+		PropertyFilter filter = new PropertyFilter("SPEC FILTER", null, null, null, null, null, 15.0);
+		Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("size"), Sort.Order.asc("price")));
+
+		Page<Property> result = propertyService.getPaginatedProperties(filter, pageable);
+
+		assertEquals(2, result.getTotalElements());
+		assertEquals(300.0, result.getContent().get(0).getPrice());
+		assertEquals(100.0, result.getContent().get(1).getPrice());
+		assertThrows(BadRequestException.class, () -> propertyService.getPaginatedProperties(filter,
+				PageRequest.of(0, 10, Sort.by("description"))));
+		assertThrows(BadRequestException.class, () -> propertyService.getPaginatedProperties(
+				new PropertyFilter(null, 10.0, 5.0, null, null, null, null), pageable));
+	}
+
+	// Test 26: Test that queued updates of the same property are coalesced and only the latest one is written
+	@Test
+	void testWriteQueueCoalescesUpdates() throws InterruptedException {
+		PropertyDTO created = new PropertyDTO();
+		created.setAddress("Queued address");
+		created.setPrice(100.0);
+		created.setSize(10.0);
+		Long id = propertyBatchService.createAll(List.of(created)).get(0).getId();
+
+		List<WriteTicketDTO> tickets = new ArrayList<>();
+		for (double price = 101; price <= 103; price++) {
+			PropertyDTO update = new PropertyDTO();
+			update.setAddress("Queued address");
+			update.setPrice(price);
+			update.setSize(10.0);
+			tickets.add(propertyWriteQueue.submit(id, update));
+		}
+		String last = tickets.get(2).getTicket();
+		for (int i = 0; i < 100 && propertyWriteQueue.getTicket(last).getStatus() == WriteTicketDTO.Status.PENDING; i++) {
+			Thread.sleep(50);
+		}
+
+		assertEquals(WriteTicketDTO.Status.APPLIED, propertyWriteQueue.getTicket(last).getStatus());
+		assertNotEquals(WriteTicketDTO.Status.PENDING, propertyWriteQueue.getTicket(tickets.get(0).getTicket()).getStatus());
+		assertEquals(103.0, propertyService.getById(id).getPrice());
+		assertThrows(NotFoundException.class, () -> propertyWriteQueue.submit(Long.MAX_VALUE, new PropertyDTO()));
+	}
+
+	// Test 27: Test the single-statement update and delete with the expected version
+	@Test
+	void testVersionedUpdateAndDelete() {
+		Property saved = propertyService.save(new Property("Versioned address", 100.0, 10.0, null));
+		Long id = saved.getId();
+		Long version = propertyService.getById(id).getVersion();
+
+		Property updated = propertyService.update(id, new Property("Versioned address", 200.0, 10.0, null), version);
+		assertEquals(version + 1, updated.getVersion());
+		assertEquals(version + 1, propertyService.getById(id).getVersion());
+		assertEquals(20.0, jdbcTemplate.queryForObject(
+				"SELECT price_per_m2 FROM property WHERE id = ?", Double.class, id));
+
+		assertThrows(PreconditionFailedException.class,
+				() -> propertyService.update(id, new Property("Versioned address", 300.0, 10.0, null), version));
+		assertThrows(PreconditionFailedException.class, () -> propertyService.delete(id, version));
+		Property blind = propertyService.update(id, new Property("Versioned address", 250.0, 10.0, null), null);
+		assertEquals(version + 2, blind.getVersion());
+		assertDoesNotThrow(() -> propertyService.delete(id, version + 2));
+		assertThrows(NotFoundException.class, () -> propertyService.delete(id, null));
+	}
+
+	// Test 28: Test the error counters by ErrorCode and the rows of the repository methods
+	@Test
+	void testErrorAndRepositoryMetrics() {
+		Counter notFound = meterRegistry.get(ErrorHandler.ERRORS_METRIC).tag("code", "NOT_FOUND").counter();
+		assertNotNull(meterRegistry.get(ErrorHandler.ERRORS_METRIC).tag("code", "PRECONDITION_FAILED").counter());
+		double before = notFound.count();
+
+		assertEquals(404, errorHandler.handle(new NotFoundException("missing")).getStatusCode().value());
+		assertEquals(before + 1, notFound.count());
+
+		PropertyDTO created = new PropertyDTO();
+		created.setAddress("Metered address");
+		created.setPrice(100.0);
+		created.setSize(10.0);
+		propertyBatchService.createAll(List.of(created));
+		Slice<Property> slice = propertyService.getSlicedProperties(PropertyFilter.NONE, PageRequest.of(0, 3));
+
+		DistributionSummary rows = meterRegistry.get(RepositoryRowsMetrics.METRIC)
+				.tag("repository", "PropertyRepository").tag("method", "findSliceByFilter").summary();
+		assertTrue(rows.count() > 0);
+		assertEquals(slice.getNumberOfElements(), rows.max());
+	}
+
+	// Test 29: Test the SQL statements each endpoint sends to the database
+	@Test
+	void testStatementsPerEndpoint() throws Exception {
+		Long id = propertyService.save(new Property("Inspected address", 100.0, 10.0, null)).getId();
+		String body = "{\"address\":\"Inspected address\",\"price\":150.0,\"size\":10.0}";
+
+		assertTrue(statements(mockMvc.perform(get("/properties").param("price", "120")).andReturn()) <= 2);
+		assertTrue(statements(mockMvc.perform(get("/properties/summary")).andReturn()) <= 2);
+		assertTrue(statements(mockMvc.perform(get("/properties/{id}", id)).andReturn()) <= 1);
+		// The update and the read of the version it left, so the response always has the ETag
+		MvcResult updated = mockMvc.perform(put("/properties/{id}", id)
+				.contentType(MediaType.APPLICATION_JSON).content(body)).andReturn();
+		assertEquals(2, statements(updated));
+		assertEquals("\"" + id + "-1\"", updated.getResponse().getHeader("ETag"));
+		assertTrue(updated.getResponse().getContentAsString().contains("\"version\":1"));
+		assertEquals(1, statements(mockMvc.perform(delete("/properties/{id}", id)).andReturn()));
+	}
+
+	private static int statements(MvcResult result) {
+		SqlInspectionFilter.RequestStatements statements = (SqlInspectionFilter.RequestStatements)
+				result.getRequest().getAttribute(SqlInspectionFilter.STATEMENTS_ATTRIBUTE);
+		assertNotNull(statements);
+		assertTrue(result.getResponse().getStatus() < 400, "status " + result.getResponse().getStatus());
+		return statements.count();
+	}
+
+	// Test 30: Test the per-client rate limit and the Retry-After of the 429 response
+	@Test
+	void testRateLimitPerClient() {
+		RateLimitInterceptor rateLimit = new RateLimitInterceptor(true, 10, 2, "X-Client-Id", 1000, new SimpleMeterRegistry());
+		MockHttpServletRequest first = new MockHttpServletRequest("GET", "/properties");
+		first.addHeader("X-Client-Id", "client-a");
+		MockHttpServletRequest second = new MockHttpServletRequest("GET", "/properties");
+		second.addHeader("X-Client-Id", "client-b");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertTrue(rateLimit.preHandle(first, response, null));
+		assertTrue(rateLimit.preHandle(first, response, null));
+		TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+				() -> rateLimit.preHandle(first, response, null));
+		assertTrue(rateLimit.preHandle(second, response, null));
+
+		assertTrue(exception.getRetryAfter().toMillis() <= 100);
+		var error = errorHandler.handle(exception);
+		assertEquals(429, error.getStatusCode().value());
+		assertEquals("1", error.getHeaders().getFirst("Retry-After"));
+		assertEquals("TOO_MANY_REQUESTS", error.getBody().getProperties().get("code"));
+	}
+
+	// Test 31: Test that reads are shed while the latency is over the threshold and writes are not
+	@Test
+	void testLoadSheddingOverLatencyThreshold() {
+		ObjectProvider<DataSource> noDataSource = mock(ObjectProvider.class);
+		LoadSheddingInterceptor shedding = new LoadSheddingInterceptor(true, Duration.ofNanos(1), 20, 0.9,
+				Duration.ofSeconds(2), new DatabaseBulkheadInterceptor(false, 10, Duration.ofSeconds(1), new SimpleMeterRegistry()),
+				noDataSource, new SimpleMeterRegistry());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockHttpServletRequest measured = new MockHttpServletRequest("GET", "/properties");
+		assertTrue(shedding.preHandle(measured, response, null));
+		shedding.afterCompletion(measured, response, null, null);
+
+		int shed = 0;
+		for (int i = 0; i < 50; i++) {
+			try {
+				shedding.preHandle(new MockHttpServletRequest("GET", "/properties"), response, null);
+			} catch (ServiceUnavailableException e) {
+				assertEquals(2, e.retryAfterSeconds());
+				shed++;
+			}
+		}
+		assertTrue(shed > 0);
+		assertTrue(shedding.preHandle(new MockHttpServletRequest("POST", "/properties"), response, null));
+	}
+
+	// Test 32: Test the read-only transactions go to a replica that is up to date and to the primary otherwise
+	@Test
+	void testReplicaRouting() throws IOException {
+		DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1", "sa", "");
+		DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1", "sa", "");
+		for (DataSource source : List.of(primary, replica)) {
+			JdbcTemplate jdbc = new JdbcTemplate(source);
+			jdbc.execute("CREATE TABLE replica_heartbeat (id INT PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+			jdbc.execute("INSERT INTO replica_heartbeat VALUES (1, 0)");
+			jdbc.execute("CREATE TABLE node (name VARCHAR(10))");
+			jdbc.update("INSERT INTO node VALUES (?)", source == primary ? "primary" : "replica");
+		}
+		try (ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replica),
+				Duration.ofSeconds(5), Clock.systemUTC(), new SimpleMeterRegistry())) {
+			DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+			JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+			TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			readOnly.setReadOnly(true);
+			TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+			routing.checkReplicas();
+			assertFalse(routing.getReplicas().get(0).isHealthy());
+			assertEquals("primary", readOnly.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class)));
+
+			Long beat = new JdbcTemplate(primary).queryForObject("SELECT beat_millis FROM replica_heartbeat", Long.class);
+			new JdbcTemplate(replica).update("UPDATE replica_heartbeat SET beat_millis = ?", beat);
+			routing.checkReplicas();
+			assertTrue(routing.getReplicas().get(0).isHealthy());
+			assertEquals("replica", readOnly.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class)));
+			assertEquals("primary", readWrite.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class)));
+		}
+	}
+
+	// Test 33: the change feed sends the committed changes and a reset to a Last-Event-ID it can not resume
+	@Test
+	void testChangeFeed() throws Exception {
+		MvcResult subscription = mockMvc.perform(get("/properties/changes")).andReturn();
+		assertTrue(subscription.getRequest().isAsyncStarted());
+
+		Property created = propertyService.save(new Property(null, "Feed Street 1", 100.0, 50.0, "Change feed"));
+		assertTrue(awaitContent(subscription, "\"id\":" + created.getId()));
+		String content = subscription.getResponse().getContentAsString();
+		assertTrue(content.contains("event:property"));
+		assertTrue(content.contains("\"type\":\"CREATED\""));
+
+		MvcResult resumed = mockMvc.perform(get("/properties/changes").header("Last-Event-ID", "unknown-1")).andReturn();
+		assertTrue(awaitContent(resumed, "event:reset"));
+
+		propertyService.delete(created.getId(), null);
+		assertTrue(awaitContent(resumed, "\"type\":\"DELETED\""));
+	}
+
+	private static boolean awaitContent(MvcResult result, String expected) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (System.nanoTime() < deadline) {
+			if (result.getResponse().getContentAsString().contains(expected)) {
+				return true;
+			}
+			Thread.sleep(20);
+		}
+		return false;
+	}
+
+	// Test 34: the statistics come from the in-memory aggregates without statements, other filters from one query
+	@Test
+	void testPropertyStats() throws Exception {
+		Property cheap = propertyService.save(new Property(null, "Stats Avenue 1", 40000.0, 80.0, "Stats"));
+		Property dear = propertyService.save(new Property(null, "Stats Avenue 2", 160000.0, 100.0, "Stats"));
+
+		assertEquals(0, statements(mockMvc.perform(get("/properties/stats")).andReturn()));
+		PropertyStatsDTO all = propertyService.getStats(PropertyFilter.NONE);
+		assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM property", Long.class), all.getCount());
+		assertEquals(jdbcTemplate.queryForObject("SELECT MAX(price) FROM property", Double.class), all.getMaxPrice());
+		assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(price) FROM property", Long.class),
+				all.getPriceBuckets().stream().mapToLong(PropertyStatsDTO.PriceBucket::count).sum());
+
+		assertEquals(1, statements(mockMvc.perform(get("/properties/stats").param("location", "stats avenue")).andReturn()));
+		PropertyStatsDTO located = propertyService.getStats(PropertyFilter.of("stats avenue", null, null));
+		assertEquals(2, located.getCount());
+		assertEquals(40000.0, located.getMinPrice());
+		assertEquals(160000.0, located.getMaxPrice());
+		assertEquals(1050.0, located.getAvgPricePerM2(), 1e-9);
+		assertEquals(List.of(new PropertyStatsDTO.PriceBucket(0, 50000, 1), new PropertyStatsDTO.PriceBucket(150000, 200000, 1)),
+				located.getPriceBuckets());
+
+		String rangeQuery = "SELECT COUNT(*) FROM property WHERE price >= 40000 AND price <= 160000";
+		PropertyFilter range = new PropertyFilter(null, 40000.0, 160000.0, null, null, null, null);
+		assertEquals(0, statements(mockMvc.perform(get("/properties/stats")
+				.param("price", "40000").param("maxPrice", "160000")).andReturn()));
+		assertEquals(1, statements(mockMvc.perform(get("/properties/stats")
+				.param("price", "40000").param("maxPrice", "150000")).andReturn()));
+		assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM property WHERE price >= 40000 AND price <= 150000", Long.class),
+				propertyService.getStats(new PropertyFilter(null, 40000.0, 150000.0, null, null, null, null)).getCount());
+		propertyService.update(dear.getId(), new Property(null, "Stats Avenue 2", 90000.0, 100.0, "Stats"), null);
+		propertyService.delete(cheap.getId(), null);
+		PropertyStatsDTO ranged = propertyService.getStats(range);
+		assertEquals(jdbcTemplate.queryForObject(rangeQuery, Long.class), ranged.getCount());
+		assertEquals(jdbcTemplate.queryForObject(rangeQuery.replace("COUNT(*)", "MIN(price)"), Double.class), ranged.getMinPrice());
+		assertEquals(jdbcTemplate.queryForObject(rangeQuery.replace("COUNT(*)", "MAX(price)"), Double.class), ranged.getMaxPrice());
+		assertThrows(BadRequestException.class,
+				() -> propertyService.getStats(new PropertyFilter(null, 10.0, 5.0, null, null, null, null)));
+	}
+
+	// Test 35: Test the column snapshot scans the same pages and totals as the database and follows the writes
+	@Test
+	void testColumnSnapshotScan() {
+		List<PropertyDTO> properties = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			PropertyDTO dto = new PropertyDTO();
+			dto.setAddress("Snapshot Road " + (i % 3));
+			dto.setPrice(1000.0 + (i * 37) % 500);
+			dto.setSize(10.0 + i % 7);
+			properties.add(dto);
+		}
+		List<Long> ids = propertyBatchService.createAll(properties).stream().map(BatchItemResultDTO::getId).toList();
+		PropertyColumnSnapshot snapshot = new PropertyColumnSnapshot(repository, true, new SimpleMeterRegistry());
+		assertEquals(Optional.empty(), snapshot.scan(PropertyFilter.NONE, null, PageRequest.of(0, 4, Sort.by("id"))));
+		snapshot.build();
+
+		Property moved = propertyService.update(ids.get(0), new Property(null, "Snapshot Road 9", 1200.0, 12.0, "moved"), null);
+		propertyService.delete(ids.get(1), null);
+		snapshot.onPropertyChanged(PropertyChangedEvent.updated(moved));
+		snapshot.onPropertyChanged(PropertyChangedEvent.deleted(ids.get(1)));
+
+		PropertyFilter filter = new PropertyFilter("snapshot road", 1100.0, null, 11.0, null, null, null);
+		String where = " FROM property WHERE address_lower LIKE '%snapshot road%' AND price >= 1100 AND size >= 11";
+		for (Sort sort : List.of(Sort.by(Sort.Order.desc("price")), Sort.by("size"), Sort.by(Sort.Order.desc("pricePerM2")))) {
+			Sort.Order order = sort.iterator().next();
+			String orderBy = (order.getProperty().equals("pricePerM2") ? "price_per_m2" : order.getProperty()) + " " + order.getDirection();
+			PropertyColumnSnapshot.Scan scan = snapshot.scan(filter, null, PageRequest.of(1, 4, sort.and(Sort.by("id")))).orElseThrow();
+			assertEquals(jdbcTemplate.queryForList("SELECT id" + where + " ORDER BY " + orderBy + ", id LIMIT 4 OFFSET 4", Long.class), scan.ids());
+			assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*)" + where, Long.class), scan.total());
+		}
+		PropertyColumnSnapshot.Scan newest = snapshot.scan(PropertyFilter.of("snapshot road", null, null), null,
+				PageRequest.of(0, 2, Sort.by(Sort.Order.desc("id")))).orElseThrow();
+		assertEquals(List.of(ids.get(29), ids.get(28)), newest.ids());
+		assertEquals(29, newest.total());
+		assertEquals(List.of(ids.get(0)), snapshot.scan(PropertyFilter.of("snapshot road 9", null, null), null,
+				PageRequest.of(0, 5, Sort.by("id"))).orElseThrow().ids());
+		PropertyColumnSnapshot.Scan candidates = snapshot.scan(PropertyFilter.of("snapshot road 9", null, null),
+				List.of(ids.get(1), ids.get(0), -1L), PageRequest.of(0, 5, Sort.by("id"))).orElseThrow();
+		assertEquals(List.of(ids.get(0)), candidates.ids());
+		assertEquals(1, candidates.total());
+		assertEquals(Optional.empty(), snapshot.scan(filter, null, PageRequest.of(0, 4, Sort.by("address", "id"))));
+	}
+
+	// Test 36: Test that a lagging replica is not read right after a write, so the caches filled by those reads are fresh
+	@Test
+	void testNoStaleReadsFromLaggingReplicaAfterWrite() throws IOException {
+		DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:lagging-primary;DB_CLOSE_DELAY=-1", "sa", "");
+		DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:lagging-replica;DB_CLOSE_DELAY=-1", "sa", "");
+		for (DataSource source : List.of(primary, replica)) {
+			JdbcTemplate jdbc = new JdbcTemplate(source);
+			jdbc.execute("CREATE TABLE replica_heartbeat (id INT PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+			jdbc.execute("INSERT INTO replica_heartbeat VALUES (1, 1000)");
+			jdbc.execute("CREATE TABLE item (id INT PRIMARY KEY, address VARCHAR(20))");
+			jdbc.execute("INSERT INTO item VALUES (1, 'Old Street')");
+		}
+		Clock clock = mock(Clock.class);
+		when(clock.millis()).thenReturn(1000L);
+		try (ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replica),
+				Duration.ofSeconds(5), clock, new SimpleMeterRegistry())) {
+			DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+			JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+			TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			readOnly.setReadOnly(true);
+			TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			Cache cache = new ConcurrentMapCache("properties");
+			routing.checkReplicas();
+			assertTrue(routing.getReplicas().get(0).isHealthy());
+
+			// The replica is within max-lag but does not have the update yet, the write evicts the cached entry
+			readWrite.executeWithoutResult(status -> jdbc.update("UPDATE item SET address = 'New Street' WHERE id = 1"));
+			cache.evict(1);
+			when(clock.millis()).thenReturn(3000L);
+			String read = cache.get(1, () -> readOnly.execute(status ->
+					jdbc.queryForObject("SELECT address FROM item WHERE id = 1", String.class)));
+			assertEquals("New Street", read);
+
+			// Once the replica can not be behind that write anymore the reads go back to it
+			new JdbcTemplate(replica).update("UPDATE item SET address = 'Replica Street' WHERE id = 1");
+			when(clock.millis()).thenReturn(9000L);
+			assertEquals("Replica Street", readOnly.execute(status ->
+					jdbc.queryForObject("SELECT address FROM item WHERE id = 1", String.class)));
+		}
+	}
+
+	// Test 37: Test that queued updates are written only at the version they were queued on
+	@Test
+	void testWriteQueueNeverOverwritesNewerWrites() throws Exception {
+		PropertyDTO created = new PropertyDTO();
+		created.setAddress("Versioned queue address");
+		created.setPrice(100.0);
+		created.setSize(10.0);
+		Long id = propertyBatchService.createAll(List.of(created)).get(0).getId();
+		Long version = repository.findVersionById(id).orElseThrow();
+
+		PropertyDTO stale = new PropertyDTO();
+		stale.setId(id);
+		stale.setAddress("Versioned queue address");
+		stale.setPrice(150.0);
+		stale.setSize(10.0);
+		List<BatchItemResultDTO> results = propertyBatchService.updateAll(List.of(stale), List.of(version + 1));
+		assertEquals(412, results.get(0).getError().getStatus());
+		results = propertyBatchService.updateAll(List.of(stale), List.of(version));
+		assertNull(results.get(0).getError());
+		assertEquals(version + 1, repository.findVersionById(id).orElseThrow());
+
+		// A write that does not go through the queue commits before or after the flush, it is kept either way
+		PropertyDTO queued = new PropertyDTO();
+		queued.setAddress("Versioned queue address");
+		queued.setPrice(200.0);
+		queued.setSize(10.0);
+		String ticket = propertyWriteQueue.submit(id, queued).getTicket();
+		jdbcTemplate.update("UPDATE property SET price = 300, version = version + 1 WHERE id = ?", id);
+		for (int i = 0; i < 100 && propertyWriteQueue.getTicket(ticket).getStatus() == WriteTicketDTO.Status.PENDING; i++) {
+			Thread.sleep(50);
+		}
+
+		WriteTicketDTO.Status status = propertyWriteQueue.getTicket(ticket).getStatus();
+		assertTrue(status == WriteTicketDTO.Status.SUPERSEDED || status == WriteTicketDTO.Status.APPLIED);
+		assertEquals(300.0, jdbcTemplate.queryForObject("SELECT price FROM property WHERE id = ?", Double.class, id));
+
+		// A synchronous write rejected with 412 does not drop the queued update of another client
+		queued.setPrice(400.0);
+		String kept = propertyWriteQueue.submit(id, queued).getTicket();
+		mockMvc.perform(put("/properties/{id}", id).header("If-Match", "\"" + id + "-0\"")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"address\":\"Versioned queue address\",\"price\":500.0,\"size\":10.0}"))
+				.andExpect(result -> assertEquals(412, result.getResponse().getStatus()));
+		for (int i = 0; i < 100 && propertyWriteQueue.getTicket(kept).getStatus() == WriteTicketDTO.Status.PENDING; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(WriteTicketDTO.Status.APPLIED, propertyWriteQueue.getTicket(kept).getStatus());
+		assertEquals(400.0, jdbcTemplate.queryForObject("SELECT price FROM property WHERE id = ?", Double.class, id));
+	}
+
+	// Test 38: Test that the catalog ETag and the address index follow the writes of other instances sharing the database
+	@Test
+	void testCatalogVersionSeesSharedWrites() throws InterruptedException {
+		PropertyDTO created = new PropertyDTO();
+		created.setAddress("Shared catalog address");
+		created.setPrice(10.0);
+		created.setSize(20.0);
+		Long id = propertyBatchService.createAll(List.of(created)).get(0).getId();
+		catalogVersion.checkShared();
+		String before = catalogVersion.etag();
+		catalogVersion.checkShared();
+		assertEquals(before, catalogVersion.etag());
+
+		// Written by another instance: no event reaches this one
+		jdbcTemplate.update("UPDATE property SET updated_at = ?, version = version + 1 WHERE id = ?",
+				Timestamp.from(Instant.now().plusSeconds(60)), id);
+		catalogVersion.checkShared();
+
+		String after = catalogVersion.etag();
+		assertNotEquals(before, after);
+		// The address index did not see that write, the location filters go to the database until it is rebuilt
+		assertEquals(Optional.empty(), trigramIndex.candidates("shared catalog"));
+		catalogVersion.checkShared();
+		assertEquals(after, catalogVersion.etag());
+		for (int i = 0; i < 100 && trigramIndex.candidates("shared catalog").isEmpty(); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(List.of(id), trigramIndex.candidates("shared catalog").orElseThrow());
+	}
+
+	// Test 39: Test that only the client that wrote reads from the primary after its write, the others read the replica without caching
+	@Test
+	void testReadYourWritesPerClient() throws IOException {
+		DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:client-primary;DB_CLOSE_DELAY=-1", "sa", "");
+		DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:client-replica;DB_CLOSE_DELAY=-1", "sa", "");
+		for (DataSource source : List.of(primary, replica)) {
+			JdbcTemplate jdbc = new JdbcTemplate(source);
+			jdbc.execute("CREATE TABLE replica_heartbeat (id INT PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+			jdbc.execute("INSERT INTO replica_heartbeat VALUES (1, 1000)");
+			jdbc.execute("CREATE TABLE item (id INT PRIMARY KEY, address VARCHAR(20))");
+			jdbc.execute("INSERT INTO item VALUES (1, 'Old Street')");
+		}
+		Clock clock = mock(Clock.class);
+		when(clock.millis()).thenReturn(1000L);
+		try (ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replica),
+				Duration.ofSeconds(5), clock, new SimpleMeterRegistry())) {
+			DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+			JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+			TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			readOnly.setReadOnly(true);
+			TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			routing.checkReplicas();
+
+			List<Long> cookies = new ArrayList<>();
+			routing.bindClient(0, cookies::add);
+			try {
+				readWrite.executeWithoutResult(status -> jdbc.update("UPDATE item SET address = 'New Street' WHERE id = 1"));
+			} finally {
+				ReplicaRoutingDataSource.unbindClient();
+			}
+			assertEquals(List.of(1000L), cookies);
+			when(clock.millis()).thenReturn(3000L);
+
+			// Another client keeps reading the replica, what it reads is not cached
+			routing.bindClient(0, millis -> {});
+			try {
+				assertEquals("Old Street", readOnly.execute(status ->
+						jdbc.queryForObject("SELECT address FROM item WHERE id = 1", String.class)));
+				assertTrue(ReplicaRoutingDataSource.readsMayMissWrites());
+			} finally {
+				ReplicaRoutingDataSource.unbindClient();
+			}
+
+			// The client that wrote sends its cookie back and reads its write
+			routing.bindClient(cookies.get(0), millis -> {});
+			try {
+				assertEquals("New Street", readOnly.execute(status ->
+						jdbc.queryForObject("SELECT address FROM item WHERE id = 1", String.class)));
+				assertFalse(ReplicaRoutingDataSource.readsMayMissWrites());
+			} finally {
+				ReplicaRoutingDataSource.unbindClient();
+			}
+
+			// Threads without a client use the window of the instance
+			assertEquals("New Street", readOnly.execute(status ->
+					jdbc.queryForObject("SELECT address FROM item WHERE id = 1", String.class)));
+		}
+	}
+
+	// Test 40: Test that a row deleted or updated while the column snapshot is being built is not put back by the build
+	@Test
+	void testColumnSnapshotChangesWhileBuilding() {
+		PropertyColumns kept = columns(1L, "Calle 5 Cali", 100.0);
+		PropertyColumns deleted = columns(2L, "Calle 6 Cali", 200.0);
+		PropertyColumns updated = columns(3L, "Calle 7 Cali", 300.0);
+		PropertyColumnSnapshot snapshot = new PropertyColumnSnapshot(propertyRepository, true, new SimpleMeterRegistry());
+		// The rows are read before the delete and the update commit, their events arrive before the batch is applied
+		when(propertyRepository.findColumnsAfter(Long.MIN_VALUE, Limit.of(10_000))).thenAnswer(invocation -> {
+			snapshot.onPropertyChanged(PropertyChangedEvent.deleted(2L));
+			snapshot.onPropertyChanged(PropertyChangedEvent.updated(new Property(3L, "Calle 7 Cali", 350.0, 10.0, null)));
+			return List.of(kept, deleted, updated);
+		});
+		snapshot.build();
+
+		PropertyColumnSnapshot.Scan scan = snapshot.scan(PropertyFilter.of("cali", null, null), null,
+				PageRequest.of(0, 10, Sort.by("id"))).orElseThrow();
+		assertEquals(List.of(1L, 3L), scan.ids());
+		assertEquals(2, scan.total());
+		assertEquals(List.of(3L), snapshot.scan(PropertyFilter.of("cali", 350.0, null), null,
+				PageRequest.of(0, 10, Sort.by("id"))).orElseThrow().ids());
+	}
+
+	private static PropertyColumns columns(Long id, String address, Double price) {
+		PropertyColumns row = mock(PropertyColumns.class);
+		when(row.getId()).thenReturn(id);
+		lenient().when(row.getAddress()).thenReturn(address);
+		lenient().when(row.getPrice()).thenReturn(price);
+		lenient().when(row.getSize()).thenReturn(10.0);
+		return row;
+	}
+
+	// Test 41: Test that an import reports its progress as NDJSON and that the chunks written before a failure evict the counts
+	@Test
+	void testImportProgressAndFailure() throws Exception {
+		StringBuilder feed = new StringBuilder();
+		for (int i = 0; i < 501; i++) {
+			feed.append("{\"address\":\"Progress ").append(i).append("\",\"price\":10,\"size\":20}\n");
+		}
+		MvcResult started = mockMvc.perform(post("/properties/import")
+				.contentType("application/x-ndjson").accept("application/x-ndjson").content(feed.toString())).andReturn();
+		String[] lines = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].contains("\"imported\":500"));
+		assertFalse(lines[0].contains("rejectedLines"));
+		assertTrue(lines[1].contains("\"imported\":501"));
+		assertTrue(lines[1].contains("\"rejectedLines\":[]"));
+
+		long before = repository.countByFilter(PropertyFilter.NONE, null);
+		InputStream broken = new SequenceInputStream(new ByteArrayInputStream(feed.toString().getBytes(StandardCharsets.UTF_8)),
+				new InputStream() {
+					@Override
+					public int read() throws IOException {
+						throw new IOException("Connection reset");
+					}
+				});
+		assertThrows(IOException.class, () -> propertyBatchService.importProperties(broken, "application/x-ndjson"));
+		assertEquals(before + 500, repository.countByFilter(PropertyFilter.NONE, null));
+	}
+
+	// Test 42: Test that respond-async is found among the other preferences of the Prefer header
+	@Test
+	void testPreferRespondAsync() throws Exception {
+		Long id = propertyService.save(new Property(null, "Prefer Street 1", 100.0, 10.0, "Prefer")).getId();
+		String body = "{\"address\":\"Prefer Street 1\",\"price\":200.0,\"size\":10.0}";
+
+		MvcResult queued = mockMvc.perform(put("/properties/{id}", id).header("Prefer", "wait=10, Respond-Async; foo")
+				.contentType(MediaType.APPLICATION_JSON).content(body)).andReturn();
+		assertEquals(202, queued.getResponse().getStatus());
+		assertEquals("respond-async", queued.getResponse().getHeader("Preference-Applied"));
+		assertTrue(queued.getResponse().getHeader("Location").startsWith("/properties/writes/"));
+
+		MvcResult other = mockMvc.perform(put("/properties/{id}", id).header("Prefer", "return=minimal")
+				.contentType(MediaType.APPLICATION_JSON).content(body)).andReturn();
+		assertEquals(200, other.getResponse().getStatus());
+		assertNotNull(other.getResponse().getHeader("ETag"));
+
+		// A conditional update answers its precondition right away
+		String etag = other.getResponse().getHeader("ETag");
+		MvcResult conditional = mockMvc.perform(put("/properties/{id}", id).header("Prefer", "respond-async")
+				.header("If-Match", etag).contentType(MediaType.APPLICATION_JSON).content(body)).andReturn();
+		assertEquals(200, conditional.getResponse().getStatus());
+		assertNull(conditional.getResponse().getHeader("Preference-Applied"));
 	}
 
 }
@@ -0,0 +1,116 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Mixed load (filtered listings, detail reads and writes) through PropertyController on embedded H2,
+ * once per configuration of the pool, statement cache and Hibernate settings, to size them from data.
+ * Run with: mvn test -Pbenchmark -Dtest=ConnectionTuningBenchmark
+ * (-Dbenchmark.configs lists the configurations separated by ";", each one comma separated properties,
+ * -Dbenchmark.mix the percentage of listings, details and writes, -Dbenchmark.rounds repeats the list,
+ * -Dbenchmark.rows, -Dbenchmark.clients and -Dbenchmark.requests change the load).
+ * The configurations run one after the other in the same JVM, compare them across rounds
+ */
+@Tag("benchmark")
+class ConnectionTuningBenchmark {
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 10_000);
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 64);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 50);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 1);
+    private static final int[] MIX = Arrays.stream(System.getProperty("benchmark.mix", "70,25,5").split(","))
+            .mapToInt(p -> Integer.parseInt(p.trim())).toArray();
+    private static final String CONFIGS = System.getProperty("benchmark.configs", String.join(";",
+            "",
+            "spring.datasource.hikari.maximum-pool-size=4",
+            "spring.datasource.hikari.maximum-pool-size=20",
+            "spring.datasource.hikari.data-source-properties.QUERY_CACHE_SIZE=0",
+            "spring.datasource.hikari.data-source-properties.QUERY_CACHE_SIZE=64",
+            "spring.jpa.properties.hibernate.jdbc.fetch_size=100"));
+
+    @Test
+    void compareConfigurations() throws Exception {
+        LoadGenerator load = new LoadGenerator();
+        List<LoadGenerator.Report> reports = new ArrayList<>();
+        List<String> pools = new ArrayList<>();
+        // The first context only warms up the JVM, the code it compiles is shared by the next ones
+        String[] configs = ("; " + (CONFIGS + ";").repeat(ROUNDS - 1) + CONFIGS).split(";", -1);
+        int perRound = CONFIGS.split(";", -1).length;
+        for (int c = 0; c < configs.length; c++) {
+            List<String> args = new ArrayList<>(List.of("--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:tuning-" + c + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                    "--app.rate-limit.enabled=false",
+                    "--app.load-shedding.enabled=false",
+                    "--logging.level.root=WARN"));
+            String name = c == 0 ? "warm-up" : (configs[c].isBlank() ? "defaults" : configs[c].trim()
+                    .replace("spring.datasource.hikari.", "hikari.").replace("spring.jpa.properties.", ""))
+                    + (ROUNDS > 1 ? " #" + (1 + (c - 1) / perRound) : "");
+            for (String property : configs[c].split(",")) {
+                if (!property.isBlank()) {
+                    args.add("--" + property.trim());
+                }
+            }
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(Taller5Application.class)
+                    .run(args.toArray(String[]::new))) {
+                ThreadingModeBenchmark.seed(app.getBean(PropertyBatchService.class), ROWS);
+                String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                // A full run first, the server JIT warms up again in every context
+                load.run("warm-up " + name, CLIENTS, REQUESTS, i -> request(base, i));
+                if (c == 0) {
+                    continue;
+                }
+                Timer acquire = app.getBean(MeterRegistry.class).get("hikaricp.connections.acquire").timer();
+                long acquiredBefore = acquire.count();
+                double waitedBefore = acquire.totalTime(TimeUnit.MILLISECONDS);
+                reports.add(load.run(name, CLIENTS, REQUESTS, i -> request(base, i)));
+                long acquired = acquire.count() - acquiredBefore;
+                pools.add(String.format(Locale.ROOT, "%-44s %6d connections acquired  mean wait %7.3f ms  max wait %7.3f ms",
+                        name, acquired, acquired == 0 ? 0 : (acquire.totalTime(TimeUnit.MILLISECONDS) - waitedBefore) / acquired,
+                        acquire.max(TimeUnit.MILLISECONDS)));
+            }
+        }
+        System.out.println(LoadGenerator.Report.table(reports));
+        System.out.println(String.join(System.lineSeparator(), pools));
+        assertFalse(reports.isEmpty());
+    }
+
+    /**
+     * The i-th request of the mix: a listing with a different filter and page every time (so the
+     * response cache never hits), a property by id, or a create every tenth write and an update otherwise
+     */
+    static HttpRequest request(String base, int i) {
+        int slot = Math.floorMod(i * 7919, 100);
+        if (slot < MIX[0]) {
+            String uri = base + "/properties?page=" + (i % 20) + "&size=20&sort=price&price=" + (i * 7919L % 900_000)
+                    + "&sizeProperty=" + (i % 200) + (i % 4 == 0 ? "&location=Calle " + (i % 100) : "");
+            return HttpRequest.newBuilder(URI.create(uri.replace(" ", "%20"))).GET().build();
+        }
+        if (slot < MIX[0] + MIX[1]) {
+            return HttpRequest.newBuilder(URI.create(base + "/properties/" + (1 + i % ROWS))).GET().build();
+        }
+        String body = String.format(Locale.ROOT,
+                "{\"address\":\"Calle %d #%d-%d Bogota\",\"price\":%d,\"size\":%d,\"description\":\"Tuning write %d\"}",
+                i % 100, i % 100, i % 37, 1000 + i * 7919L % 1_000_000, 20 + i % 300, i);
+        HttpRequest.BodyPublisher json = HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest.Builder write = i % 10 == 0
+                ? HttpRequest.newBuilder(URI.create(base + "/properties")).POST(json)
+                : HttpRequest.newBuilder(URI.create(base + "/properties/" + (1 + i % ROWS))).PUT(json);
+        return write.header("Content-Type", "application/json").build();
+    }
+}
@@ -0,0 +1,128 @@
+package edu.eci.arep.taller5.benchmark;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Closed-loop HTTP load generator for the benchmarks: every client runs on its own virtual
+ * thread and sends its next request as soon as the previous one completes
+ */
+public class LoadGenerator {
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    /**
+     * @param clients concurrent clients
+     * @param requestsPerClient requests sent by each client
+     * @param request builds the i-th request of the run
+     */
+    public Report run(String name, int clients, int requestsPerClient, IntFunction<HttpRequest> request) throws InterruptedException {
+        long[] latencies = new long[clients * requestsPerClient];
+        int[] codes = new int[latencies.length];
+        AtomicInteger next = new AtomicInteger();
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                executor.submit(() -> {
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        int i = next.getAndIncrement();
+                        long sent = System.nanoTime();
+                        int status;
+                        try {
+                            status = client.send(request.apply(i), HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (Exception e) {
+                            status = -1;
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                        codes[i] = status;
+                        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Map<Integer, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> counts.put(status, count.sum()));
+        return new Report(name, latencies, codes, elapsed, counts);
+    }
+
+    /**
+     * Throughput, latency percentiles and responses by status code (-1 for I/O errors).
+     * The ok percentiles only count the 2xx responses, the latency the served clients saw
+     */
+    public static class Report {
+        private final String name;
+        private final long[] sortedLatencies;
+        private final long[] sortedOkLatencies;
+        private final long elapsedNanos;
+        private final Map<Integer, Long> statuses;
+
+        Report(String name, long[] latencies, int[] codes, long elapsedNanos, Map<Integer, Long> statuses) {
+            this.name = name;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+            this.sortedOkLatencies = IntStream.range(0, latencies.length)
+                    .filter(i -> codes[i] >= 200 && codes[i] < 300)
+                    .mapToLong(i -> latencies[i])
+                    .sorted()
+                    .toArray();
+            this.elapsedNanos = elapsedNanos;
+            this.statuses = statuses;
+        }
+
+        public double throughput() {
+            return sortedLatencies.length * 1e9 / elapsedNanos;
+        }
+
+        public double percentileMillis(double p) {
+            return percentile(sortedLatencies, p);
+        }
+
+        public double okPercentileMillis(double p) {
+            return percentile(sortedOkLatencies, p);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            int at = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, at)] / 1e6;
+        }
+
+        public Map<Integer, Long> getStatuses() {
+            return statuses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-28s %9.1f req/s  p50 %8.2f ms  p95 %8.2f ms  p99 %8.2f ms  max %8.2f ms  ok p99 %8.2f ms  %s",
+                    name, throughput(), percentileMillis(50), percentileMillis(95), percentileMillis(99),
+                    percentileMillis(100), okPercentileMillis(99), statuses);
+        }
+
+        public static String table(List<Report> reports) {
+            List<String> lines = new ArrayList<>();
+            reports.forEach(r -> lines.add(r.toString()));
+            return String.join(System.lineSeparator(), lines);
+        }
+    }
+}
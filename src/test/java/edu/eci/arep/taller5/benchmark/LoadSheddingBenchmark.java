@@ -0,0 +1,70 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * A scraper sending listings with random filters from most of the clients, next to regular users,
+ * without protection and with the per-client rate limit and the load shedding. The "ok p99" column
+ * is the tail latency of the requests that were served.
+ * Run with: mvn test -Pbenchmark -Dtest=LoadSheddingBenchmark
+ * (-Dbenchmark.rows, -Dbenchmark.clients and -Dbenchmark.requests change the load)
+ */
+@Tag("benchmark")
+class LoadSheddingBenchmark {
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 10_000);
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 400);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20);
+
+    @Test
+    void compareWithAndWithoutProtection() throws Exception {
+        LoadGenerator load = new LoadGenerator();
+        List<LoadGenerator.Report> reports = new ArrayList<>();
+        for (boolean protection : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(Taller5Application.class)
+                    .run("--server.port=0",
+                            "--spring.datasource.url=jdbc:h2:mem:shedding-" + protection + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                            "--app.rate-limit.enabled=" + protection,
+                            "--app.rate-limit.client-header=X-Client-Id",
+                            "--app.load-shedding.enabled=" + protection,
+                            "--app.load-shedding.latency-threshold=50ms",
+                            "--logging.level.root=WARN")) {
+                ThreadingModeBenchmark.seed(app.getBean(PropertyBatchService.class), ROWS);
+                String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                String mode = protection ? "rate limit + shedding" : "no protection";
+                load.run("warm-up " + mode, 20, 20, i -> request(base, i, "warm-up-" + i));
+                reports.add(load.run(mode + " (all)", CLIENTS, REQUESTS, i -> request(base, i, client(i))));
+                reports.add(load.run(mode + " (users)", CLIENTS / 20, REQUESTS, i -> request(base, i, "user-" + i)));
+            }
+        }
+        System.out.println(LoadGenerator.Report.table(reports));
+        assertFalse(reports.isEmpty());
+    }
+
+    /**
+     * 9 of every 10 requests come from the scraper identity
+     */
+    private static String client(int i) {
+        return i % 10 == 0 ? "user-" + i : "scraper";
+    }
+
+    /**
+     * Uncached listings: a different price and page on every request so the response cache never hits
+     */
+    private static HttpRequest request(String base, int i, String client) {
+        String uri = base + "/properties?page=" + (i % 20) + "&size=20&sort=price&price=" + (i * 7919L % 900_000)
+                + "&sizeProperty=" + (i % 200);
+        return HttpRequest.newBuilder(URI.create(uri)).header("X-Client-Id", client).GET().build();
+    }
+}
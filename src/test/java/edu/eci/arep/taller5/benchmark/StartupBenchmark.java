@@ -0,0 +1,132 @@
+package edu.eci.arep.taller5.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Time from launching the JVM to the first successful GET /properties, and the latency of that
+ * first request, for each startup mode of the application built by the aot profile.
+ * Run with: mvn -Paot package -DskipTests, then mvn test -Pbenchmark -Dtest=StartupBenchmark
+ * (-Dbenchmark.runs changes the starts per mode, -Dbenchmark.app the extracted application directory)
+ */
+@Tag("benchmark")
+class StartupBenchmark {
+    private static final int RUNS = Integer.getInteger("benchmark.runs", 3);
+    private static final Path APP = Path.of(System.getProperty("benchmark.app", "target/application"));
+    private static final String JAR = "taller5-0.0.1-SNAPSHOT.jar";
+    private static final Duration MAX_STARTUP = Duration.ofMinutes(2);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Test
+    void compareStartupModes() throws Exception {
+        assumeTrue(Files.exists(APP.resolve(JAR)), "Build the application first with mvn -Paot package -DskipTests");
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("jar", List.of());
+        modes.put("lazy", List.of("-Dspring.main.lazy-initialization=true"));
+        modes.put("aot", List.of("-Dspring.aot.enabled=true"));
+        modes.put("cds", List.of("-XX:SharedArchiveFile=application.jsa"));
+        modes.put("aot + cds", List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=application.jsa"));
+        modes.put("aot + cds + lazy", List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=application.jsa",
+                "-Dspring.main.lazy-initialization=true"));
+        List<String> lines = new ArrayList<>();
+        modes.forEach((mode, flags) -> {
+            long[] firstOk = new long[RUNS];
+            long[] firstRequest = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                long[] times = start(mode, flags);
+                firstOk[run] = times[0];
+                firstRequest[run] = times[1];
+            }
+            lines.add(String.format(Locale.ROOT, "%-18s first OK p50 %7.0f ms  max %7.0f ms  first request p50 %7.1f ms",
+                    mode, median(firstOk), max(firstOk), median(firstRequest)));
+        });
+        System.out.println(String.join(System.lineSeparator(), lines));
+        assertTrue(lines.size() == modes.size());
+    }
+
+    /**
+     * Launches the application and polls GET /properties until it answers 200
+     * @return the nanoseconds from the launch to that answer and the nanoseconds the answered request took
+     */
+    private long[] start(String mode, List<String> flags) {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(flags);
+        command.addAll(List.of("-jar", JAR, "--server.port=" + port, "--app.rate-limit.enabled=false"));
+        Path log = APP.resolve("startup-" + mode.replace(" + ", "-") + ".log");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/properties"))
+                .timeout(Duration.ofSeconds(30)).GET().build();
+        Process process = null;
+        try {
+            long launched = System.nanoTime();
+            process = new ProcessBuilder(command).directory(APP.toFile())
+                    .redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            while (System.nanoTime() - launched < MAX_STARTUP.toNanos() && process.isAlive()) {
+                long sent = System.nanoTime();
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        long answered = System.nanoTime();
+                        return new long[]{answered - launched, answered - sent};
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException(mode + " did not answer GET /properties, see " + log);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            if (process != null) {
+                process.destroy();
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+
+    private static double max(long[] nanos) {
+        return Arrays.stream(nanos).max().orElse(0) / 1e6;
+    }
+}
@@ -0,0 +1,74 @@
+package edu.eci.arep.taller5.benchmark;
+
+import edu.eci.arep.taller5.Taller5Application;
+import edu.eci.arep.taller5.model.DTO.PropertyDTO;
+import edu.eci.arep.taller5.service.PropertyBatchService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Compares the platform-thread and the virtual-thread request execution modes with many
+ * concurrent clients. Run with: mvn test -Pbenchmark -Dtest=ThreadingModeBenchmark
+ * (-Dbenchmark.rows, -Dbenchmark.clients and -Dbenchmark.requests change the load)
+ */
+@Tag("benchmark")
+class ThreadingModeBenchmark {
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 10_000);
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 2_000);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 10);
+
+    @Test
+    void compareThreadingModes() throws Exception {
+        LoadGenerator load = new LoadGenerator();
+        List<LoadGenerator.Report> reports = new ArrayList<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(Taller5Application.class)
+                    .run("--server.port=0",
+                            "--spring.threads.virtual.enabled=" + virtual,
+                            "--app.rate-limit.enabled=false",
+                            "--app.load-shedding.enabled=false",
+                            "--spring.datasource.url=jdbc:h2:mem:threading-" + virtual + ";DB_CLOSE_DELAY=-1;MODE=MySQL",
+                            "--logging.level.root=WARN")) {
+                seed(app.getBean(PropertyBatchService.class), ROWS);
+                String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                String mode = virtual ? "virtual threads" : "platform threads";
+                load.run("warm-up " + mode, 50, 20, i -> listing(base, i));
+                reports.add(load.run(mode, CLIENTS, REQUESTS, i -> listing(base, i)));
+            }
+        }
+        System.out.println(LoadGenerator.Report.table(reports));
+        assertFalse(reports.isEmpty());
+    }
+
+    static HttpRequest listing(String base, int i) {
+        String uri = i % 2 == 0
+                ? base + "/properties?page=" + (i % 50) + "&size=20&price=" + (i % 1000)
+                : base + "/properties/" + (1 + i % ROWS);
+        return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+    }
+
+    static void seed(PropertyBatchService batchService, int rows) {
+        List<PropertyDTO> chunk = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            PropertyDTO dto = new PropertyDTO();
+            dto.setAddress("Calle " + i + " #" + (i % 100) + "-" + (i % 37) + " Bogota");
+            dto.setPrice(1000.0 + (i * 7919L) % 1_000_000);
+            dto.setSize(20.0 + i % 300);
+            dto.setDescription("Benchmark property " + i);
+            chunk.add(dto);
+            if (chunk.size() == 5_000 || i == rows - 1) {
+                batchService.createAll(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+    }
+}